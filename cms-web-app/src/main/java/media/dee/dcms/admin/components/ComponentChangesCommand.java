@@ -0,0 +1,32 @@
+package media.dee.dcms.admin.components;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import media.dee.dcms.admin.internal.ShortCommandName;
+import media.dee.dcms.admin.services.ComponentService;
+import media.dee.dcms.core.components.WebComponent;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lets a reconnecting client catch up with the essential components changes since the version it has.
+ */
+@Component
+@ShortCommandName("components/essential/changes")
+public class ComponentChangesCommand implements WebComponent.Command {
+    private final AtomicReference<ComponentService> componentServiceRef = new AtomicReference<>();
+
+    @Reference
+    void setComponentService(ComponentService componentService) {
+        componentServiceRef.set(componentService);
+    }
+
+    @Override
+    public JsonNode execute(JsonNode... arguments) {
+        JsonNode argument = arguments.length == 0 ? null : arguments[0];
+        JsonNode since = argument == null ? null : argument.get("since");
+        JsonNode origin = argument == null ? null : argument.get("origin");
+        return componentServiceRef.get().getChanges(since == null ? -1 : since.asLong(), origin == null ? null : origin.asText());
+    }
+}
@@ -0,0 +1,137 @@
+package media.dee.dcms.admin.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import media.dee.dcms.core.components.WebComponent.Command.CommandType;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Versioned log of changes to the essential components manifest.<br/>
+ * changes are collected until published as one delta, the latest deltas are kept so a reconnecting client
+ * can catch up from the version it has instead of reloading the full list.
+ */
+class ComponentChangeLog {
+
+    /**
+     * a pending or published change of one bundle module, the latest change of a module wins.
+     */
+    private static class Change {
+        private final CommandType type;
+        private final JsonNode bundle;
+
+        Change(CommandType type, JsonNode bundle) {
+            this.type = type;
+            this.bundle = bundle;
+        }
+    }
+
+    private static class Delta {
+        private final long from;
+        private final long to;
+        private final Map<String, Change> changes;
+
+        Delta(long from, long to, Map<String, Change> changes) {
+            this.from = from;
+            this.to = to;
+            this.changes = changes;
+        }
+    }
+
+    private final ObjectMapper objectMapper;
+    private final int historySize;
+    private final Deque<Delta> history = new ArrayDeque<>();
+    private Map<String, Change> pending = new LinkedHashMap<>();
+    private long publishedVersion = 0;
+
+    /**
+     * @param objectMapper mapper to create the delta messages
+     * @param historySize number of published deltas to keep
+     */
+    ComponentChangeLog(ObjectMapper objectMapper, int historySize) {
+        this.objectMapper = objectMapper;
+        this.historySize = historySize;
+    }
+
+    /**
+     * record a change to be published with the next delta.
+     * @param type install or uninstall
+     * @param bundle bundle information of the module, as listed by components/essential/bundles
+     */
+    synchronized void record(CommandType type, JsonNode bundle) {
+        String key = bundle.get("bundlePath").asText();
+        pending.remove(key);
+        pending.put(key, new Change(type, bundle));
+    }
+
+    /**
+     * publish pending changes as one delta.
+     * @param version the manifest version after applying the pending changes
+     * @return the delta message or null when there is nothing to publish
+     */
+    synchronized ObjectNode publish(long version) {
+        if (pending.isEmpty())
+            return null;
+
+        Delta delta = new Delta(publishedVersion, version, pending);
+        pending = new LinkedHashMap<>();
+        publishedVersion = version;
+
+        history.addLast(delta);
+        while (history.size() > historySize)
+            history.removeFirst();
+
+        return toMessage(delta.from, delta.to, delta.changes);
+    }
+
+    /**
+     * merge published deltas since a version.
+     * @param since the version the client has
+     * @return the merged delta message or null when the version is too old or unknown, so the full list should be sent.
+     */
+    synchronized ObjectNode since(long since) {
+        if (since == publishedVersion)
+            return toMessage(since, publishedVersion, new LinkedHashMap<>());
+        if (history.isEmpty() || since < history.peekFirst().from || since > publishedVersion)
+            return null;
+
+        Map<String, Change> merged = new LinkedHashMap<>();
+        Iterator<Delta> iterator = history.iterator();
+        while (iterator.hasNext()) {
+            Delta delta = iterator.next();
+            if (delta.to <= since)
+                continue;
+            for (Map.Entry<String, Change> change : delta.changes.entrySet()) {
+                merged.remove(change.getKey());
+                merged.put(change.getKey(), change.getValue());
+            }
+        }
+        return toMessage(since, publishedVersion, merged);
+    }
+
+    synchronized long getPublishedVersion() {
+        return publishedVersion;
+    }
+
+    private ObjectNode toMessage(long from, long to, Map<String, Change> changes) {
+        ObjectNode message = objectMapper.createObjectNode()
+                .put("action", "components.delta")
+                .put("from", from)
+                .put("version", to);
+        ArrayNode install = message.putArray("install");
+        ArrayNode uninstall = message.putArray("uninstall");
+        for (Change change : changes.values()) {
+            if (change.type == CommandType.Install)
+                install.add(change.bundle);
+            else
+                uninstall.add(change.bundle);
+        }
+        return message;
+    }
+}
@@ -0,0 +1,80 @@
+package media.dee.dcms.admin.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import media.dee.dcms.core.components.AdminModule;
+import media.dee.dcms.core.components.WebComponent;
+import org.osgi.framework.Bundle;
+
+import java.io.File;
+
+/**
+ * Metadata of a WebComponent resolved once when the component binds, so listing the components and serving
+ * their resources doesn't repeat the annotation and bundle lookups.
+ */
+public class ComponentDescriptor {
+    private final WebComponent component;
+    private final AdminModule adminModule;
+    private final Bundle bundle;
+    private final String symbolicName;
+    private final String version;
+    private final String resourceAlias;
+    private final ObjectNode bundleInfo;
+
+    private ComponentDescriptor(WebComponent component, ObjectMapper objectMapper) {
+        this.component = component;
+        this.adminModule = ComponentServiceImpl.getAdminModule(component);
+        this.bundle = ComponentServiceImpl.getComponentBundle(component);
+        this.symbolicName = bundle.getSymbolicName();
+        this.version = bundle.getVersion().toString();
+        this.resourceAlias = ComponentServiceImpl.getBundleWebAdminResrouceFile(component).getPath();
+        this.bundleInfo = objectMapper.createObjectNode()
+                .put("bundlePath", new File(resourceAlias, String.format("%s.js", adminModule.value())).getPath())
+                .put("SymbolicName", symbolicName)
+                .put("Version", version);
+    }
+
+    /**
+     * resolve the descriptor of a component.
+     * @param component the component to describe, it should have AdminModule annotation.
+     * @param objectMapper mapper to build the bundle information
+     * @return the component descriptor
+     */
+    public static ComponentDescriptor of(WebComponent component, ObjectMapper objectMapper) {
+        return new ComponentDescriptor(component, objectMapper);
+    }
+
+    public WebComponent getComponent() {
+        return component;
+    }
+
+    public AdminModule getAdminModule() {
+        return adminModule;
+    }
+
+    public Bundle getBundle() {
+        return bundle;
+    }
+
+    public String getSymbolicName() {
+        return symbolicName;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the alias the component resources are registered with, /cms/{SymbolicName}/{Version}/{resource}
+     */
+    public String getResourceAlias() {
+        return resourceAlias;
+    }
+
+    /**
+     * @return bundle information as listed by components/essential/bundles, shared and shouldn't be modified.
+     */
+    public ObjectNode getBundleInfo() {
+        return bundleInfo;
+    }
+}
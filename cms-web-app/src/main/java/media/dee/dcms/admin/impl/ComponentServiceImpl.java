@@ -5,35 +5,78 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import media.dee.dcms.admin.internal.ComponentResourceServlet;
+import media.dee.dcms.admin.internal.ResourceCache;
 import media.dee.dcms.admin.internal.ShortCommandName;
 import media.dee.dcms.admin.services.AdminWebsocketDispatcher;
 import media.dee.dcms.admin.services.ComponentService;
 import media.dee.dcms.core.components.AdminModule;
 import media.dee.dcms.core.components.WebComponent;
+import media.dee.dcms.core.io.BufferPool;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.FrameworkUtil;
-import org.osgi.framework.ServiceReference;
 import org.osgi.service.component.annotations.*;
 import org.osgi.service.http.HttpService;
-import org.osgi.service.http.NamespaceException;
 import org.osgi.service.log.LogService;
 
+import javax.servlet.Servlet;
 import java.io.File;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @Component(immediate = true, scope = ServiceScope.SINGLETON)
 @ShortCommandName("components/essential/bundles")
 @SuppressWarnings("unused")
 public class ComponentServiceImpl implements ComponentService, WebComponent.Command {
 
+    private static final long PUBLISH_DELAY_MILLIS = 250;
+    private static final long MAX_PUBLISH_DELAY_MILLIS = 2000;
+    private static final int CHANGE_HISTORY_SIZE = 64;
+
     private final ObjectMapper objectMapper = new ObjectMapper();
     private final AtomicReference<LogService> logRef = new AtomicReference<>();
     private final AtomicReference<AdminWebsocketDispatcher> communicationHandler = new AtomicReference<>();
-    private final List<WebComponent> guiComponents = new LinkedList<>();
-    private final List<HttpService> httpServiceList = new LinkedList<>();
-    private final LinkedList<String> registeredServlets = new LinkedList<>();
+    private final Map<WebComponent, ComponentDescriptor> guiComponents = new LinkedHashMap<>();
+    private final ResourceRegistrar resourceRegistrar = new ResourceRegistrar(logRef::get);
+    private final List<WebComponent> startupComponents = new ArrayList<>();
+    private final PhaseTimings startupTimings = new PhaseTimings();
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+    private boolean activated = false;
+    private final AtomicReference<JsonNode> essentialBundles = new AtomicReference<>(objectMapper.createArrayNode());
+    private final AtomicLong version = new AtomicLong();
+    private final ComponentChangeLog changeLog = new ComponentChangeLog(objectMapper, CHANGE_HISTORY_SIZE);
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ScheduledExecutorService changePublisher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "dcms-component-changes");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private ScheduledFuture<?> scheduledPublish;
+    private long pendingSince;
+    private long lastChange;
+    private final ResourceCache resourceCache = new ResourceCache(
+            32 * 1024 * 1024,
+            256 * 1024,
+            FrameworkUtil.getBundle(ComponentServiceImpl.class).getBundleContext().getDataFile("resources")
+    );
+    /**
+     * one factory for the front end, registering it again on each HttpService bind keeps the existing registrations.
+     */
+    private final Supplier<Servlet> frontEndServlet = () -> new ComponentResourceServlet(
+            FrameworkUtil.getBundle(ComponentServiceImpl.class), "/cms/fe", "/webapp", resourceCache, false);
 
 
     public static Bundle getComponentBundle(WebComponent webComponent){
@@ -58,83 +101,128 @@ public class ComponentServiceImpl implements ComponentService, WebComponent.Comm
         );
     }
 
-    private ObjectNode getBundleInfo(WebComponent webComponent){
-        AdminModule adminModule = getAdminModule(webComponent);
-        Bundle bundle = getComponentBundle(webComponent);
-        File jsModule = new File( getBundleWebAdminResrouceFile(webComponent), String.format("%s.js", adminModule.value()) );
-        return objectMapper.createObjectNode()
-                .put("bundlePath",  jsModule.getPath() )
-                .put("SymbolicName", bundle.getSymbolicName())
-                .put("Version", bundle.getVersion().toString());
+    /**
+     * record a manifest change and publish it with the next delta, changes are debounced so a redeploy of
+     * many bundles is pushed to the clients as one message.
+     */
+    private void recordChange(ComponentDescriptor descriptor, CommandType commandType) {
+        synchronized (changeLog) {
+            changeLog.record(commandType, descriptor.getBundleInfo());
+            // held back until the node is ready, then published with the startup components
+            if (!ready.isDone())
+                return;
+            lastChange = System.currentTimeMillis();
+            if (scheduledPublish == null) {
+                pendingSince = lastChange;
+                scheduledPublish = changePublisher.schedule(this::publishChanges, PUBLISH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
     }
 
-    private JsonNode getCommand(WebComponent component, CommandType commandType) {
-        AdminModule adminModule = component.getClass().getAnnotation(AdminModule.class);
-        Bundle bundle = FrameworkUtil.getBundle(component.getClass());
-        File jsModule = new File( getBundleWebAdminResrouceFile(component), adminModule.value() );
-
-        ObjectNode cmd = objectMapper.createObjectNode()
-                .put("action", commandType.toString().toLowerCase());
-        cmd.set("bundle", getBundleInfo(component));
-        return cmd;
+    private void publishChanges() {
+        ObjectNode delta;
+        synchronized (changeLog) {
+            long now = System.currentTimeMillis();
+            if (now - lastChange < PUBLISH_DELAY_MILLIS && now - pendingSince < MAX_PUBLISH_DELAY_MILLIS) {
+                // more changes arrived while waiting, wait for the changes to settle down
+                scheduledPublish = changePublisher.schedule(this::publishChanges, PUBLISH_DELAY_MILLIS - (now - lastChange), TimeUnit.MILLISECONDS);
+                return;
+            }
+            scheduledPublish = null;
+            delta = changeLog.publish(version.get());
+        }
 
+        AdminWebsocketDispatcher dispatcher = communicationHandler.get();
+        if (delta == null || dispatcher == null)
+            return;
+        // versions and resources are of this node, each node notifies its own clients
+        dispatcher.send(delta.put("origin", nodeId));
     }
 
-    private void ModuleResourcesAction(WebComponent webComponent, ComponentResourcesAction resourcesAction) {
-        AdminModule adminModule = getAdminModule(webComponent);
-        Bundle bundle = getComponentBundle(webComponent);
-
-        //get http service from osgi registry
-        Bundle myself = FrameworkUtil.getBundle(this.getClass());
-        ServiceReference<HttpService> ref = myself.getBundleContext().getServiceReference(HttpService.class);
-        HttpService bundleHttpService = myself.getBundleContext().getService(ref);
+    private void ModuleResourcesAction(ComponentDescriptor descriptor, ComponentResourcesAction resourcesAction) {
+        String path = descriptor.getResourceAlias();
+        switch (resourcesAction){
+            case Register:
+                resourceRegistrar.register(path, () -> new ComponentResourceServlet(descriptor, resourceCache));
+                break;
+            case UnRegister:
+                resourceRegistrar.unregister(path);
+                resourceCache.evict(descriptor.getBundle());
+                break;
+        }
+        logRef.get().log(LogService.LOG_DEBUG,
+                String.format("[%s]Resource of GUIComponent: %s%n\tMapping: %s --> [%s:%s]%s%n",
+                    resourcesAction, descriptor.getComponent().getClass().getName(), path,
+                    descriptor.getSymbolicName(), descriptor.getVersion(), descriptor.getAdminModule().resource()));
+    }
 
+    private ComponentDescriptor describe(WebComponent component) {
         try {
-            String path = getBundleWebAdminResrouceFile(webComponent).getPath();
-            synchronized (this.registeredServlets) {
-                switch (resourcesAction){
-                    case Register:
-                        if( this.registeredServlets.contains(path))
-                            return;
-                        bundleHttpService.registerServlet(
-                                getBundleWebAdminResrouceFile(webComponent).getPath(),
-                                new ComponentResourceServlet(webComponent),
-                                null,
-                                null
-                        );
-                        this.registeredServlets.add(path);
-                        break;
-                    case UnRegister:
-                        if( this.registeredServlets.contains(path)) {
-                            bundleHttpService.unregister(getBundleWebAdminResrouceFile(webComponent).getPath());
-                            this.registeredServlets.remove(path);
-                            return;
-                        }
-                        break;
-                }
-                logRef.get().log(LogService.LOG_DEBUG,
-                        String.format("[%s]Resource of GUIComponent: %s%n\tMapping: %s --> [%s:%s]%s%n",
-                            resourcesAction, webComponent.getClass().getName(), path,
-                            bundle.getSymbolicName(), bundle.getVersion(), adminModule.resource()));
-            }
-        } catch (Exception exception) {
-            switch (resourcesAction){
-                case Register:
-                    logRef.get().log(LogService.LOG_ERROR, String.format("Error while registering httpService Resource of GUIComponent: %s", webComponent.getClass().getName()), exception);
-                    break;
-                case UnRegister:
-                    logRef.get().log(LogService.LOG_ERROR, String.format("Error while un-registering httpService Resource of GUIComponent: %s", webComponent.getClass().getName()), exception);
-                    break;
-            }
-        } finally {
-            bundle.getBundleContext().ungetService(ref);
+            return ComponentDescriptor.of(component, objectMapper);
+        } catch (RuntimeException ex) {
+            logRef.get().log(LogService.LOG_ERROR, String.format("Error while binding GUIComponent: %s", component.getClass().getName()), ex);
+            return null;
         }
     }
 
+    /**
+     * components bound before the activation are described in parallel and registered in one batch,
+     * the node is ready when their resources are registered.
+     */
     @Activate
     public void activate() {
         LogService log = logRef.get();
+        List<ComponentDescriptor> descriptors;
+        synchronized (guiComponents) {
+            startupTimings.mark("bind");
+            descriptors = startupComponents.parallelStream()
+                    .map(this::describe)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+            startupComponents.clear();
+            startupTimings.mark("descriptors");
+
+            for (ComponentDescriptor descriptor : descriptors) {
+                guiComponents.put(descriptor.getComponent(), descriptor);
+                ModuleResourcesAction(descriptor, ComponentResourcesAction.Register);
+            }
+            rebuildEssentialBundles();
+            activated = true;
+            startupTimings.mark("manifest");
+        }
         log.log(LogService.LOG_INFO, "CMS Component Service Activated");
+
+        resourceRegistrar.flush().whenComplete((result, th) -> {
+            startupTimings.mark("resources");
+            ObjectNode delta;
+            synchronized (changeLog) {
+                for (ComponentDescriptor descriptor : descriptors)
+                    if (descriptor.getAdminModule().autoInstall())
+                        changeLog.record(CommandType.Install, descriptor.getBundleInfo());
+                delta = changeLog.publish(version.get());
+                ready.complete(null);
+            }
+            AdminWebsocketDispatcher dispatcher = communicationHandler.get();
+            if (delta != null && dispatcher != null)
+                dispatcher.send(delta.put("origin", nodeId));
+            startupTimings.mark("notify");
+
+            logRef.get().log(LogService.LOG_INFO, String.format("CMS Component Service ready in %d ms, %d components [%s]",
+                    startupTimings.total(TimeUnit.MILLISECONDS), descriptors.size(), startupTimings));
+        });
+    }
+
+    @Override
+    public CompletionStage<Void> whenReady() {
+        return ready;
+    }
+
+    @Deactivate
+    public void deactivate() {
+        changePublisher.shutdownNow();
+        resourceRegistrar.close();
+        logRef.get().log(LogService.LOG_INFO, String.format("CMS Component Service deactivated [%s; %s]",
+                BufferPool.heap().getStats(), BufferPool.direct().getStats()));
     }
 
     @Reference
@@ -156,73 +244,97 @@ public class ComponentServiceImpl implements ComponentService, WebComponent.Comm
 
     @Reference(cardinality = ReferenceCardinality.AT_LEAST_ONE, unbind = "unbindHttpService", policy = ReferencePolicy.DYNAMIC)
     public void bindHttpService(HttpService httpService) {
-        synchronized (httpServiceList) {
-            httpServiceList.add(httpService);
-        }
-
-        try {
-            httpService.registerResources("/cms/fe", "/webapp", null);
-        } catch (NamespaceException e) {
-            throw new RuntimeException(e);
-        }
-
-        guiComponents.parallelStream()
-                .forEach(guiComponent -> ModuleResourcesAction(guiComponent, ComponentResourcesAction.Register));
+        resourceRegistrar.register("/cms/fe", frontEndServlet);
+        resourceRegistrar.addHttpService(httpService);
     }
 
     public void unbindHttpService(HttpService httpService) {
-        synchronized (httpServiceList) {
-            httpServiceList.remove(httpService);
-        }
-
-        httpService.unregister("/cms/fe");
-
-        guiComponents.parallelStream()
-                .forEach(guiComponent -> ModuleResourcesAction(guiComponent, ComponentResourcesAction.UnRegister));
-
+        resourceRegistrar.removeHttpService(httpService);
     }
 
     @Reference(cardinality = ReferenceCardinality.MULTIPLE, unbind = "unbindEssentialComponent", policy = ReferencePolicy.DYNAMIC)
     public void bindEssentialComponent(WebComponent component) {
         synchronized (guiComponents) {
+            if (!activated) {
+                startupComponents.add(component);
+                return;
+            }
 
-            guiComponents.add(component);
-            httpServiceList.parallelStream()
-                    .forEach(httpService -> ModuleResourcesAction(component, ComponentResourcesAction.Register));
-
-            AdminModule adminModule = getAdminModule(component);
-
-            if (adminModule.autoInstall() && communicationHandler.get() !=null )
+            ComponentDescriptor descriptor = describe(component);
+            if (descriptor == null)
+                return;
+            guiComponents.put(component, descriptor);
+            rebuildEssentialBundles();
+            ModuleResourcesAction(descriptor, ComponentResourcesAction.Register);
 
-                communicationHandler.get().send(getCommand(component, CommandType.Install));
+            if (descriptor.getAdminModule().autoInstall())
+                recordChange(descriptor, CommandType.Install);
 
         }
     }
 
     public void unbindEssentialComponent(WebComponent component) {
         synchronized (guiComponents) {
+            if (!activated) {
+                startupComponents.remove(component);
+                return;
+            }
 
-            guiComponents.remove(component);
-
-            httpServiceList.parallelStream()
-                    .forEach(httpService -> ModuleResourcesAction(component, ComponentResourcesAction.UnRegister));
+            ComponentDescriptor descriptor = guiComponents.remove(component);
+            if (descriptor == null)
+                return;
+            rebuildEssentialBundles();
+            ModuleResourcesAction(descriptor, ComponentResourcesAction.UnRegister);
 
-            if( communicationHandler.get() != null )
-                communicationHandler.get().send(getCommand(component, CommandType.Uninstall));
+            recordChange(descriptor, CommandType.Uninstall);
         }
     }
 
 
-    @Override
-    public JsonNode execute(JsonNode... arguments) {
+    /**
+     * rebuild the essential bundles list, should be called while holding guiComponents lock.
+     */
+    private void rebuildEssentialBundles() {
         final ArrayNode bundles = objectMapper.createArrayNode();
 
-        guiComponents.stream()
-                .filter(guiComponent ->
-                        guiComponent.getClass().getAnnotation(AdminModule.class) != null &&
-                                guiComponent.getClass().getAnnotation(AdminModule.class).autoInstall())
-                .map(this::getBundleInfo)
-                .forEach(bundles::add);
-        return bundles;
+        for (ComponentDescriptor descriptor : guiComponents.values())
+            if (descriptor.getAdminModule().autoInstall())
+                bundles.add(descriptor.getBundleInfo());
+        essentialBundles.set(bundles);
+        version.incrementAndGet();
+    }
+
+    @Override
+    public JsonNode getEssentialBundles() {
+        return essentialBundles.get();
+    }
+
+    @Override
+    public long getVersion() {
+        return version.get();
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public JsonNode getChanges(long since, String origin) {
+        // versions of another node don't match the versions of this node
+        ObjectNode delta = nodeId.equals(origin) ? changeLog.since(since) : null;
+        if (delta != null)
+            return delta.put("origin", nodeId);
+        ObjectNode full = objectMapper.createObjectNode()
+                .put("action", "components.full")
+                .put("version", changeLog.getPublishedVersion())
+                .put("origin", nodeId);
+        full.set("bundles", getEssentialBundles());
+        return full;
+    }
+
+    @Override
+    public JsonNode execute(JsonNode... arguments) {
+        return getEssentialBundles();
     }
 }
@@ -0,0 +1,48 @@
+package media.dee.dcms.admin.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the elapsed time of named phases in the order they were run, phases with the same name are accumulated.
+ */
+class PhaseTimings {
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+    private long phaseStart = System.nanoTime();
+
+    /**
+     * end the current phase and start timing the next one.
+     * @param phase name of the phase that has just ended
+     */
+    synchronized void mark(String phase) {
+        long now = System.nanoTime();
+        phases.merge(phase, now - phaseStart, Long::sum);
+        phaseStart = now;
+    }
+
+    /**
+     * add the elapsed time of a phase timed by the caller, used when phases run concurrently.
+     */
+    synchronized void add(String phase, long nanos) {
+        phases.merge(phase, nanos, Long::sum);
+    }
+
+    synchronized long total(TimeUnit unit) {
+        long total = 0;
+        for (long nanos : phases.values())
+            total += nanos;
+        return unit.convert(total, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<String, Long> phase : phases.entrySet()) {
+            if (report.length() > 0)
+                report.append(", ");
+            report.append(String.format("%s: %.3f ms", phase.getKey(), phase.getValue() / 1e6));
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,230 @@
+package media.dee.dcms.admin.impl;
+
+import org.osgi.service.http.HttpService;
+import org.osgi.service.log.LogService;
+
+import javax.servlet.Servlet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Reconciles the servlets registered on the bound HttpServices with the desired registrations.<br/>
+ * callers only change the desired state, a single reconciler thread compares it with the actual registrations of each
+ * HttpService and registers or un-registers the difference in one pass, so binding components never blocks on the container.<br/>
+ * an alias registered again with another servlet factory is re-registered with the new servlet. a pass failing to
+ * register a servlet schedules another pass, with a delay doubling while registrations keep failing.
+ */
+class ResourceRegistrar {
+    private static final long UNREGISTER_TIMEOUT_SECONDS = 30;
+    private static final long MIN_RETRY_DELAY_SECONDS = 5;
+    private static final long MAX_RETRY_DELAY_SECONDS = 300;
+
+    private final Supplier<LogService> log;
+    private final Map<String, Supplier<Servlet>> desired = new HashMap<>();
+    private final Map<HttpService, Map<String, Supplier<Servlet>>> actual = new IdentityHashMap<>();
+    private final AtomicBoolean reconcileScheduled = new AtomicBoolean();
+    private long retryDelaySeconds = MIN_RETRY_DELAY_SECONDS;
+    private final ScheduledExecutorService reconciler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "dcms-resource-registrar");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    ResourceRegistrar(Supplier<LogService> log) {
+        this.log = log;
+    }
+
+    /**
+     * register a servlet on all bound HttpServices.
+     * @param alias the alias to register the servlet with
+     * @param servletFactory creates a servlet instance for each HttpService
+     */
+    void register(String alias, Supplier<Servlet> servletFactory) {
+        synchronized (desired) {
+            desired.put(alias, servletFactory);
+        }
+        scheduleReconcile();
+    }
+
+    /**
+     * un-register a servlet from all bound HttpServices.
+     * @param alias the alias the servlet is registered with
+     */
+    void unregister(String alias) {
+        synchronized (desired) {
+            desired.remove(alias);
+        }
+        scheduleReconcile();
+    }
+
+    void addHttpService(HttpService httpService) {
+        submit(() -> actual.putIfAbsent(httpService, new HashMap<>()));
+        scheduleReconcile();
+    }
+
+    /**
+     * un-register all servlets from a HttpService, waits for the un-registration as the service is going away.
+     */
+    void removeHttpService(HttpService httpService) {
+        await(submit(() -> {
+            Map<String, Supplier<Servlet>> registered = actual.remove(httpService);
+            if (registered != null)
+                unregisterAll(httpService, registered);
+        }));
+    }
+
+    /**
+     * un-register all servlets and stop the reconciler.
+     */
+    void close() {
+        await(submit(() -> {
+            for (Map.Entry<HttpService, Map<String, Supplier<Servlet>>> registrations : actual.entrySet())
+                unregisterAll(registrations.getKey(), registrations.getValue());
+            actual.clear();
+        }));
+        reconciler.shutdown();
+    }
+
+    /**
+     * run a reconcile pass now.
+     * @return completes when the desired registrations are applied on all bound HttpServices.
+     */
+    CompletableFuture<Void> flush() {
+        try {
+            return CompletableFuture.runAsync(this::reconcile, reconciler);
+        } catch (RejectedExecutionException ex) {
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    private Future<?> submit(Runnable task) {
+        try {
+            return reconciler.submit(task);
+        } catch (RejectedExecutionException ex) {
+            /* registrar is closed, all servlets are already un-registered */
+            return null;
+        }
+    }
+
+    private void await(Future<?> future) {
+        if (future == null)
+            return;
+        try {
+            future.get(UNREGISTER_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException ex) {
+            log.get().log(LogService.LOG_ERROR, "Error while un-registering component resources", ex);
+        }
+    }
+
+    private void scheduleReconcile() {
+        if (!reconcileScheduled.compareAndSet(false, true))
+            return;
+        submit(() -> {
+            // changes made after taking the snapshot schedule another pass
+            reconcileScheduled.set(false);
+            reconcile();
+        });
+    }
+
+    /**
+     * schedule another pass for the failed registrations, runs on the reconciler.
+     */
+    private void scheduleRetry(int failedCount) {
+        log.get().log(LogService.LOG_WARNING, String.format("%d component resource(s) failed to register, retrying in %d s",
+                failedCount, retryDelaySeconds));
+        try {
+            reconciler.schedule(this::scheduleReconcile, retryDelaySeconds, TimeUnit.SECONDS);
+        } catch (RejectedExecutionException ex) {
+            /* registrar is closed */
+        }
+        retryDelaySeconds = Math.min(retryDelaySeconds * 2, MAX_RETRY_DELAY_SECONDS);
+    }
+
+    private void unregisterAll(HttpService httpService, Map<String, Supplier<Servlet>> registered) {
+        for (String alias : registered.keySet()) {
+            try {
+                httpService.unregister(alias);
+            } catch (Exception exception) {
+                log.get().log(LogService.LOG_ERROR, String.format("Error while un-registering httpService Resource: %s", alias), exception);
+            }
+        }
+        registered.clear();
+    }
+
+    private void reconcile() {
+        PhaseTimings timings = new PhaseTimings();
+        Map<String, Supplier<Servlet>> snapshot;
+        synchronized (desired) {
+            snapshot = new HashMap<>(desired);
+        }
+        timings.mark("snapshot");
+
+        int registeredCount = 0;
+        int unregisteredCount = 0;
+        int failedCount = 0;
+        for (Map.Entry<HttpService, Map<String, Supplier<Servlet>>> registrations : actual.entrySet()) {
+            HttpService httpService = registrations.getKey();
+            Map<String, Supplier<Servlet>> registered = registrations.getValue();
+
+            // an alias registered with another factory is replaced
+            List<String> toUnregister = new ArrayList<>();
+            for (Map.Entry<String, Supplier<Servlet>> registration : registered.entrySet())
+                if (snapshot.get(registration.getKey()) != registration.getValue())
+                    toUnregister.add(registration.getKey());
+            List<String> toRegister = new ArrayList<>();
+            for (Map.Entry<String, Supplier<Servlet>> registration : snapshot.entrySet())
+                if (registered.get(registration.getKey()) != registration.getValue())
+                    toRegister.add(registration.getKey());
+            timings.mark("diff");
+
+            for (String alias : toUnregister) {
+                try {
+                    httpService.unregister(alias);
+                } catch (Exception exception) {
+                    log.get().log(LogService.LOG_ERROR, String.format("Error while un-registering httpService Resource: %s", alias), exception);
+                }
+                registered.remove(alias);
+                ++unregisteredCount;
+            }
+            timings.mark("unregister");
+
+            for (String alias : toRegister) {
+                Supplier<Servlet> servletFactory = snapshot.get(alias);
+                try {
+                    httpService.registerServlet(alias, servletFactory.get(), null, null);
+                    registered.put(alias, servletFactory);
+                    ++registeredCount;
+                } catch (Exception exception) {
+                    ++failedCount;
+                    log.get().log(LogService.LOG_ERROR, String.format("Error while registering httpService Resource: %s", alias), exception);
+                }
+            }
+            timings.mark("register");
+        }
+
+        if (failedCount > 0) {
+            scheduleRetry(failedCount);
+        } else {
+            retryDelaySeconds = MIN_RETRY_DELAY_SECONDS;
+        }
+
+        if (registeredCount > 0 || unregisteredCount > 0)
+            log.get().log(LogService.LOG_DEBUG, String.format("Component resources reconciled on %d HttpService(s), registered: %d, un-registered: %d [%s]",
+                    actual.size(), registeredCount, unregisteredCount, timings));
+    }
+}
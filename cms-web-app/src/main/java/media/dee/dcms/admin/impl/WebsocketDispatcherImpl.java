@@ -92,11 +92,13 @@ public class WebsocketDispatcherImpl implements AdminWebsocketDispatcher {
 
         componentService.bindCommunicationHandler(this);
 
-        /* test clustered socket */
-        sessionManager.broadcast(
-                objectMapper.createObjectNode()
-                        .put("action", "console.log")
-                        .put("message", String.format("Hello! I'm `%s`, I've just joined the cluster :)", getHostInformation().get("ip") ))
+        /* test clustered socket, announced once the node is ready without blocking the activation */
+        componentService.whenReady().thenRunAsync(() ->
+            sessionManager.broadcast(
+                    objectMapper.createObjectNode()
+                            .put("action", "console.log")
+                            .put("message", String.format("Hello! I'm `%s`, I've just joined the cluster :)", getHostInformation().get("ip") ))
+            )
         );
 
     }
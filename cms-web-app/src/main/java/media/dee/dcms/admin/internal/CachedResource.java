@@ -0,0 +1,270 @@
+package media.dee.dcms.admin.internal;
+
+import media.dee.dcms.core.http.ContentSender;
+import media.dee.dcms.core.io.BufferPool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.InputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Immutable content of a bundle resource held by {@link ResourceCache}.<br/>
+ * small resources are kept as heap byte arrays, large resources are kept off-heap in a read-only direct buffer.<br/>
+ * resources too large to be held in memory are served from a file, memory mapped when possible, or streamed from the
+ * bundle on each request when they can't be spooled to a file.<br/>
+ * compressible resources are gzipped once when they are loaded, and the compressed variant is kept along with the original.
+ */
+public class CachedResource {
+    /**
+     * compressing tiny resources doesn't pay off the gzip header and the decompression on the client.
+     */
+    private static final int MIN_COMPRESS_LENGTH = 256;
+
+    private final byte[] bytes;
+    private final byte[] gzipBytes;
+    private final ByteBuffer buffer;
+    private static final long FILE_WEIGHT = 4096;
+
+    private final File file;
+    private final URL url;
+    private final boolean fileBacked;
+    private final long length;
+    private final String eTag;
+    private final long lastModified;
+    private final String contentType;
+
+    CachedResource(byte[] content, boolean direct, String eTag, long lastModified, String contentType) {
+        this.length = content.length;
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+        this.contentType = contentType;
+        this.gzipBytes = isCompressible(contentType, content.length) ? gzip(content) : null;
+        this.file = null;
+        this.url = null;
+        this.fileBacked = false;
+        if (direct) {
+            ByteBuffer directBuffer = ByteBuffer.allocateDirect(content.length);
+            directBuffer.put(content).flip();
+            this.buffer = directBuffer.asReadOnlyBuffer();
+            this.bytes = null;
+        } else {
+            this.buffer = null;
+            this.bytes = content;
+        }
+    }
+
+    /**
+     * file backed resource, mapped into memory when it fits in a single mapping.
+     */
+    CachedResource(File file, String eTag, long lastModified, String contentType) throws IOException {
+        this.length = file.length();
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+        this.contentType = contentType;
+        this.bytes = null;
+        this.gzipBytes = null;
+        this.url = null;
+        this.fileBacked = true;
+        if (length <= Integer.MAX_VALUE) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+                this.buffer = mapped.asReadOnlyBuffer();
+            }
+            this.file = null;
+        } else {
+            this.buffer = null;
+            this.file = file;
+        }
+    }
+
+    /**
+     * resource streamed from its url on each request, it's never cached.
+     * @param length content length, -1 when it's unknown
+     */
+    CachedResource(URL url, long length, String eTag, long lastModified, String contentType) {
+        this.length = length;
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+        this.contentType = contentType;
+        this.bytes = null;
+        this.gzipBytes = null;
+        this.buffer = null;
+        this.file = null;
+        this.url = url;
+        this.fileBacked = true;
+    }
+
+    private static boolean isCompressible(String contentType, int length) {
+        if (contentType == null || length < MIN_COMPRESS_LENGTH)
+            return false;
+        return contentType.startsWith("text/")
+                || contentType.contains("javascript")
+                || contentType.contains("json")
+                || contentType.contains("xml");
+    }
+
+    private static byte[] gzip(byte[] content) {
+        ByteArrayOutputStream os = new ByteArrayOutputStream(content.length / 2);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(os)) {
+            gzip.write(content);
+        } catch (IOException ex) {
+            return null;
+        }
+        byte[] compressed = os.toByteArray();
+        return compressed.length < content.length ? compressed : null;
+    }
+
+    /**
+     * @return content length, -1 when the length of a streamed resource is unknown.
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return heap and direct memory held by the resource including its compressed variant, file backed resources weigh
+     * a page each for their mapping and file handle.
+     */
+    public long getWeight() {
+        if (fileBacked)
+            return FILE_WEIGHT;
+        return gzipBytes == null ? length : length + gzipBytes.length;
+    }
+
+    /**
+     * @return whether the content is mapped from a file, so the file isn't needed after the resource is loaded.
+     */
+    boolean isMapped() {
+        return fileBacked && buffer != null;
+    }
+
+    /**
+     * @return whether the resource is compressible, so the response should vary on Accept-Encoding.
+     */
+    public boolean hasGzip() {
+        return gzipBytes != null;
+    }
+
+    public int getGzipLength() {
+        return gzipBytes == null ? 0 : gzipBytes.length;
+    }
+
+    public String getGzipETag() {
+        return eTag.substring(0, eTag.length() - 1) + "-gz\"";
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * write the gzip compressed content to the output stream.
+     * @param os the stream to write to
+     */
+    public void writeGzipTo(OutputStream os) throws IOException {
+        os.write(gzipBytes);
+    }
+
+    /**
+     * write the whole content to the output stream.
+     * @param os the stream to write to
+     */
+    public void writeTo(OutputStream os) throws IOException {
+        writeTo(os, 0, length);
+    }
+
+    /**
+     * write a range of the content to the output stream.
+     * @param os the stream to write to
+     * @param start offset of the first byte to write
+     * @param count number of bytes to write
+     */
+    public void writeTo(OutputStream os, long start, long count) throws IOException {
+        if (bytes != null) {
+            os.write(bytes, (int) start, (int) count);
+            return;
+        }
+
+        if (buffer != null) {
+            ByteBuffer view = buffer.duplicate();
+            view.position((int) start);
+            view.limit((int) (start + count));
+            ContentSender.send(os, view.slice());
+            return;
+        }
+
+        if (url != null) {
+            try (InputStream in = url.openStream()) {
+                long skipped = 0;
+                while (skipped < start) {
+                    long n = in.skip(start - skipped);
+                    if (n <= 0)
+                        throw new EOFException("Resource is shorter than the requested range");
+                    skipped += n;
+                }
+                BufferPool.heap().transfer(count < 0 ? in : new BoundedInputStream(in, count), os);
+            }
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(os);
+            long position = start;
+            long end = start + count;
+            while (position < end)
+                position += channel.transferTo(position, end - position, target);
+        }
+    }
+
+    /**
+     * stream reading up to a number of bytes of the wrapped stream.
+     */
+    private static class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long count) {
+            super(in);
+            this.remaining = count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0)
+                return -1;
+            int b = super.read();
+            if (b >= 0)
+                --remaining;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0)
+                return -1;
+            int read = super.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0)
+                remaining -= read;
+            return read;
+        }
+    }
+}
@@ -1,8 +1,7 @@
 package media.dee.dcms.admin.internal;
 
-import media.dee.dcms.core.components.AdminModule;
-import media.dee.dcms.core.components.WebComponent;
-import media.dee.dcms.admin.impl.ComponentServiceImpl;
+import media.dee.dcms.admin.impl.ComponentDescriptor;
+import media.dee.dcms.core.http.ContentNegotiation;
 import org.osgi.framework.Bundle;
 
 import javax.servlet.ServletException;
@@ -11,40 +10,195 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.URL;
 
 public class ComponentResourceServlet extends HttpServlet {
 
+    /**
+     * resource paths include the bundle version, so they can be cached by the browser for a long time.
+     */
+    private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+    /**
+     * resources of unversioned paths and snapshot bundles change without changing their path,
+     * so the browser should re-validate the resources.
+     */
+    private static final String REVALIDATE_CACHE_CONTROL = "no-cache";
+
+    /**
+     * marks a Range header that can't be satisfied by the resource length.
+     */
+    private static final long[] UNSATISFIABLE_RANGE = new long[0];
+
     private Bundle bundle;
-    private AdminModule adminModule;
-    private WebComponent webComponent;
+    private String alias;
+    private String resourceRoot;
+    private ResourceCache resourceCache;
+    private boolean versioned;
 
-    public ComponentResourceServlet(WebComponent webComponent){
-        this.webComponent = webComponent;
-        this.bundle = ComponentServiceImpl.getComponentBundle(webComponent);
-        this.adminModule = ComponentServiceImpl.getAdminModule(webComponent);
+    public ComponentResourceServlet(ComponentDescriptor descriptor, ResourceCache resourceCache){
+        this(
+                descriptor.getBundle(),
+                descriptor.getResourceAlias(),
+                descriptor.getAdminModule().resource(),
+                resourceCache,
+                true
+        );
     }
 
+    /**
+     * serve bundle resources under resource root, mapped to alias.
+     * @param bundle the bundle containing the resources
+     * @param alias the alias the servlet is registered with
+     * @param resourceRoot root path of the resources inside the bundle
+     * @param resourceCache cache to serve the resources from
+     * @param versioned whether the alias contains the bundle version
+     */
+    public ComponentResourceServlet(Bundle bundle, String alias, String resourceRoot, ResourceCache resourceCache, boolean versioned){
+        this.bundle = bundle;
+        this.alias = alias;
+        this.resourceRoot = resourceRoot;
+        this.resourceCache = resourceCache;
+        this.versioned = versioned;
+    }
 
+    private String getContentType(String path) {
+        String contentType = getServletContext() == null ? null : getServletContext().getMimeType(path);
+        if (contentType != null)
+            return contentType;
+        String name = path.toLowerCase();
+        if (name.endsWith(".js"))
+            return "application/javascript";
+        if (name.endsWith(".css"))
+            return "text/css";
+        if (name.endsWith(".json"))
+            return "application/json";
+        if (name.endsWith(".html"))
+            return "text/html";
+        if (name.endsWith(".svg"))
+            return "image/svg+xml";
+        return "application/octet-stream";
+    }
+
+    private static boolean isNotModified(HttpServletRequest req, CachedResource resource, String eTag) {
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch != null)
+            return ContentNegotiation.matches(ifNoneMatch, eTag);
+
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = req.getDateHeader("If-Modified-Since");
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+        // http dates have seconds precision
+        return ifModifiedSince >= 0 && resource.getLastModified() / 1000 <= ifModifiedSince / 1000;
+    }
+
+    /**
+     * parse a single byte range, multiple ranges are ignored and the full content is served.
+     * @return start and end offsets inclusive, null to serve the full content or UNSATISFIABLE_RANGE.
+     */
+    private static long[] parseRange(String range, long length) {
+        if (!range.startsWith("bytes=") || range.indexOf(',') >= 0)
+            return null;
+        String spec = range.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0)
+            return null;
+        try {
+            long start;
+            long end;
+            if (dash == 0) {
+                long suffix = Long.parseLong(spec.substring(1));
+                if (suffix <= 0)
+                    return UNSATISFIABLE_RANGE;
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(spec.substring(0, dash));
+                end = dash == spec.length() - 1 ? length - 1 : Math.min(Long.parseLong(spec.substring(dash + 1)), length - 1);
+            }
+            if (start >= length || start > end)
+                return UNSATISFIABLE_RANGE;
+            return new long[]{start, end};
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    private static boolean matchesIfRange(HttpServletRequest req, CachedResource resource) {
+        String ifRange = req.getHeader("If-Range");
+        if (ifRange == null)
+            return true;
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/"))
+            return ifRange.equals(resource.getETag());
+        try {
+            return resource.getLastModified() / 1000 <= req.getDateHeader("If-Range") / 1000;
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
 
     public void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-        File mappedURL = ComponentServiceImpl.getBundleWebAdminResrouceFile(webComponent);
-        String resourcePath = req.getRequestURI().substring(mappedURL.getPath().length());
-
-        URL url = bundle.getResource(new File(adminModule.resource(),resourcePath).getPath());
-        try( InputStream in = url.openStream() ; OutputStream os = resp.getOutputStream() ){
-            byte[] buffer = new byte[1024];
-            while (true) {
-                int readed = in.read(buffer);
-                if (readed < 0)
-                    break;
-                os.write(buffer, 0, readed);
+        String resourcePath = req.getRequestURI().substring(alias.length());
+        String path = new File(resourceRoot, resourcePath).getPath();
+
+        CachedResource resource = resourceCache.get(bundle, path, getContentType(path));
+        if (resource == null) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        boolean immutable = versioned && !bundle.getVersion().getQualifier().endsWith("SNAPSHOT");
+        String range = req.getHeader("Range");
+        boolean gzip = range == null && resource.hasGzip() && ContentNegotiation.acceptsGzip(req.getHeader("Accept-Encoding"));
+        String eTag = gzip ? resource.getGzipETag() : resource.getETag();
+        resp.setHeader("ETag", eTag);
+        resp.setDateHeader("Last-Modified", resource.getLastModified());
+        resp.setHeader("Cache-Control", immutable ? IMMUTABLE_CACHE_CONTROL : REVALIDATE_CACHE_CONTROL);
+        if (resource.hasGzip())
+            resp.setHeader("Vary", "Accept-Encoding");
+
+        if (isNotModified(req, resource, eTag)) {
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        resp.setContentType(resource.getContentType());
+        boolean knownLength = resource.getLength() >= 0;
+        resp.setHeader("Accept-Ranges", knownLength ? "bytes" : "none");
+        if (knownLength && range != null && matchesIfRange(req, resource)) {
+            long[] bounds = parseRange(range, resource.getLength());
+            if (bounds == UNSATISFIABLE_RANGE) {
+                resp.setHeader("Content-Range", String.format("bytes */%d", resource.getLength()));
+                resp.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            if (bounds != null) {
+                long count = bounds[1] - bounds[0] + 1;
+                resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                resp.setHeader("Content-Range", String.format("bytes %d-%d/%d", bounds[0], bounds[1], resource.getLength()));
+                resp.setContentLengthLong(count);
+                try (OutputStream os = resp.getOutputStream()) {
+                    resource.writeTo(os, bounds[0], count);
+                    os.flush();
+                }
+                return;
             }
+        }
+
+        if (gzip) {
+            resp.setHeader("Content-Encoding", "gzip");
+            resp.setContentLength(resource.getGzipLength());
+        } else if (knownLength) {
+            resp.setContentLengthLong(resource.getLength());
+        }
+        try (OutputStream os = resp.getOutputStream()) {
+            if (gzip)
+                resource.writeGzipTo(os);
+            else
+                resource.writeTo(os);
             os.flush();
-        } catch(IOException ex){
-            throw ex;
         }
     }
 }
@@ -1,37 +1,140 @@
 package media.dee.dcms.admin.internal;
 
-import org.osgi.service.component.annotations.Component;
-import org.osgi.service.component.annotations.Reference;
-import org.osgi.service.component.annotations.ReferenceCardinality;
-import org.osgi.service.component.annotations.ReferencePolicy;
-import org.osgi.service.http.HttpService;
+import com.fasterxml.jackson.databind.JsonNode;
+import media.dee.dcms.admin.services.ComponentService;
+import media.dee.dcms.core.http.ContentNegotiation;
+import media.dee.dcms.core.io.BufferPool;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.util.tracker.ServiceTracker;
 
 import javax.servlet.ServletException;
+import javax.servlet.annotation.WebInitParam;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
 
-@WebServlet(name = "index servlet", urlPatterns = {"/"})
+/**
+ * Serves the admin single page application entry.<br/>
+ * the page is cached in memory and re-validated by ETag, when inlineBootstrap init parameter is enabled
+ * the essential bundles list is inlined into the page, so the client doesn't wait for the websocket to render.
+ */
+@WebServlet(
+        name = "index servlet",
+        urlPatterns = {"/"},
+        initParams = @WebInitParam(name = "inlineBootstrap", value = "true")
+)
 public class IndexServlet extends HttpServlet {
 
+    private static final String INDEX_PATH = "/webapp/index.html";
 
+    private ServiceTracker<ComponentService, ComponentService> componentServiceTracker;
+    private boolean inlineBootstrap;
+    private volatile String template;
+    private volatile IndexPage indexPage;
+
+    /**
+     * rendered index page along with the version of the essential bundles list inlined in it.
+     */
+    private static class IndexPage {
+        private final long version;
+        private final byte[] content;
+        private final String eTag;
+
+        IndexPage(long version, byte[] content) {
+            this.version = version;
+            this.content = content;
+            CRC32 crc = new CRC32();
+            crc.update(content, 0, content.length);
+            this.eTag = String.format("\"%x-%x\"", crc.getValue(), content.length);
+        }
+    }
+
+    @Override
+    public void init() throws ServletException {
+        inlineBootstrap = Boolean.parseBoolean(getInitParameter("inlineBootstrap"));
+        if (inlineBootstrap) {
+            BundleContext context = FrameworkUtil.getBundle(this.getClass()).getBundleContext();
+            componentServiceTracker = new ServiceTracker<>(context, ComponentService.class, null);
+            componentServiceTracker.open();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (componentServiceTracker != null)
+            componentServiceTracker.close();
+    }
+
+    private String getTemplate() throws IOException {
+        if (template != null)
+            return template;
+
+        try (InputStream in = getServletContext().getResourceAsStream(INDEX_PATH)) {
+            if (in == null)
+                return null;
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            BufferPool.heap().transfer(in, os);
+            template = new String(os.toByteArray(), StandardCharsets.UTF_8);
+        }
+        return template;
+    }
+
+    private static String inline(String html, JsonNode bundles, long version, String origin) {
+        // avoid closing the script tag by the json content
+        String json = bundles.toString().replace("</", "<\\/");
+        String script = String.format("<script>window.dcmsPreload = {\"version\": %d, \"origin\": \"%s\", \"components/essential/bundles\": %s};</script>", version, origin, json);
+        int head = html.indexOf("</head>");
+        if (head < 0)
+            return script + html;
+        return html.substring(0, head) + script + html.substring(head);
+    }
+
+    private IndexPage getIndexPage() throws IOException {
+        ComponentService componentService = componentServiceTracker == null ? null : componentServiceTracker.getService();
+        long version = componentService == null ? -1 : componentService.getVersion();
+
+        IndexPage page = indexPage;
+        if (page != null && page.version == version)
+            return page;
+
+        String html = getTemplate();
+        if (html == null)
+            return null;
+        if (componentService != null)
+            html = inline(html, componentService.getEssentialBundles(), version, componentService.getNodeId());
+
+        page = new IndexPage(version, html.getBytes(StandardCharsets.UTF_8));
+        indexPage = page;
+        return page;
+    }
 
     public void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-        InputStream in = getServletContext().getResourceAsStream("/webapp/index.html");
-        OutputStream os = resp.getOutputStream();
-        byte[] buffer = new byte[1024];
-        while (true) {
-            int readed = in.read(buffer);
-            if (readed < 0)
-                break;
-            os.write(buffer, 0, readed);
+        IndexPage page = getIndexPage();
+        if (page == null) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        resp.setHeader("ETag", page.eTag);
+        resp.setHeader("Cache-Control", "no-cache");
+        if (ContentNegotiation.matches(req.getHeader("If-None-Match"), page.eTag)) {
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        resp.setContentType("text/html;charset=UTF-8");
+        resp.setContentLength(page.content.length);
+        try (OutputStream os = resp.getOutputStream()) {
+            os.write(page.content);
+            os.flush();
         }
-        os.flush();
-        in.close();
-        os.close();
     }
 }
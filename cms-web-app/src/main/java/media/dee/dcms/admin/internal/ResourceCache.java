@@ -0,0 +1,221 @@
+package media.dee.dcms.admin.internal;
+
+import media.dee.dcms.core.io.BufferPool;
+import org.osgi.framework.Bundle;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * In-memory cache of bundle resources served to the admin interface.<br/>
+ * Resources are keyed by bundle id, bundle version and resource path, the cache is bounded by a memory budget
+ * and a number of entries, and evicts the least recently used resources first.<br/>
+ * Resources too large for the memory budget, or of unknown length, are spooled once to a file, then mapped and served
+ * from the file. when they can't be spooled they are streamed from the bundle on each request and never cached.
+ */
+public class ResourceCache {
+    public static final int MAX_ENTRIES = 4096;
+
+    private final long maxBytes;
+    private final int directThreshold;
+    private final File spoolDirectory;
+    private final Map<String, CachedResource> resources = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<String, File> spooled = new HashMap<>();
+    private long usedBytes = 0;
+
+    /**
+     * @param maxBytes memory budget of the cache, resources larger than a quarter of the budget are never cached.
+     * @param directThreshold resources of this size or larger are kept in direct buffers.
+     * @param spoolDirectory directory to spool resources larger than the budget allows, null to stream them from the bundle on each request.
+     */
+    public ResourceCache(long maxBytes, int directThreshold, File spoolDirectory) {
+        this.maxBytes = maxBytes;
+        this.directThreshold = directThreshold;
+        this.spoolDirectory = spoolDirectory;
+    }
+
+    private static String key(Bundle bundle, String path) {
+        return String.format("%d/%s%s", bundle.getBundleId(), bundle.getVersion(), path);
+    }
+
+    /**
+     * get a resource from the cache, loading it from the bundle when it's missing or the bundle has been updated.
+     * @param bundle the bundle containing the resource
+     * @param path path of the resource inside the bundle
+     * @param contentType content type to be attached to the loaded resource
+     * @return the cached resource or null when the bundle doesn't have the resource
+     */
+    public CachedResource get(Bundle bundle, String path, String contentType) throws IOException {
+        String key = key(bundle, path);
+        synchronized (resources) {
+            CachedResource resource = resources.get(key);
+            if (resource != null && resource.getLastModified() == bundle.getLastModified())
+                return resource;
+        }
+
+        URL url = bundle.getResource(path);
+        if (url == null)
+            return null;
+
+        URLConnection connection = url.openConnection();
+        long length = connection.getContentLengthLong();
+        if (length < 0 || length > maxBytes / 4) {
+            boolean local = "file".equals(url.getProtocol());
+            File file = local ? toFile(url) : spool(bundle, path, connection);
+            if (file == null)
+                return new CachedResource(
+                        url,
+                        length,
+                        String.format("\"%x-%x\"", bundle.getLastModified(), length),
+                        bundle.getLastModified(),
+                        contentType
+                );
+
+            CachedResource resource = new CachedResource(
+                    file,
+                    String.format("\"%x-%x\"", file.lastModified(), file.length()),
+                    bundle.getLastModified(),
+                    contentType
+            );
+            synchronized (resources) {
+                if (local)
+                    spooled.remove(key);
+                else
+                    spooled.put(key, file);
+            }
+            put(key, resource);
+            return resource;
+        }
+
+        byte[] content;
+        try (InputStream in = connection.getInputStream()) {
+            ByteArrayOutputStream os = new ByteArrayOutputStream((int) length);
+            BufferPool.heap().transfer(in, os);
+            content = os.toByteArray();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length);
+        CachedResource resource = new CachedResource(
+                content,
+                content.length >= directThreshold,
+                String.format("\"%x-%x\"", crc.getValue(), content.length),
+                bundle.getLastModified(),
+                contentType
+        );
+
+        if (content.length > maxBytes / 4)
+            return resource;
+
+        put(key, resource);
+        return resource;
+    }
+
+    private void put(String key, CachedResource resource) {
+        synchronized (resources) {
+            CachedResource previous = resources.put(key, resource);
+            if (previous != null)
+                usedBytes -= previous.getWeight();
+            usedBytes += resource.getWeight();
+
+            Iterator<Map.Entry<String, CachedResource>> eldest = resources.entrySet().iterator();
+            while ((usedBytes > maxBytes || resources.size() > MAX_ENTRIES) && eldest.hasNext()) {
+                Map.Entry<String, CachedResource> entry = eldest.next();
+                usedBytes -= entry.getValue().getWeight();
+                eldest.remove();
+                release(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * delete the spool file of an evicted resource once it's mapped, resources served from the file keep it
+     * until the bundle is evicted since a request may still be reading it.
+     */
+    private void release(String key, CachedResource resource) {
+        File file = spooled.remove(key);
+        if (file != null && resource.isMapped())
+            file.delete();
+    }
+
+    private static File toFile(URL url) {
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException | IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * copy a resource to the spool directory, unless it's already spooled since the last bundle update.
+     * @return the spooled file or null when spooling isn't available.
+     */
+    private File spool(Bundle bundle, String path, URLConnection connection) throws IOException {
+        if (spoolDirectory == null)
+            return null;
+
+        File file = new File(new File(new File(spoolDirectory, String.valueOf(bundle.getBundleId())), bundle.getVersion().toString()), path);
+        long length = connection.getContentLengthLong();
+        if (file.isFile() && file.lastModified() >= bundle.getLastModified() && (length < 0 || file.length() == length))
+            return file;
+
+        File directory = file.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs())
+            return null;
+
+        File temporary = File.createTempFile(file.getName(), ".spool", directory);
+        try (InputStream in = connection.getInputStream()) {
+            Files.copy(in, temporary.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary.toPath());
+        }
+        return file;
+    }
+
+    /**
+     * remove all cached resources of a bundle.
+     * @param bundle the bundle to evict its resources
+     */
+    public void evict(Bundle bundle) {
+        String prefix = String.format("%d/", bundle.getBundleId());
+        synchronized (resources) {
+            Iterator<Map.Entry<String, CachedResource>> iterator = resources.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, CachedResource> entry = iterator.next();
+                if (entry.getKey().startsWith(prefix)) {
+                    usedBytes -= entry.getValue().getWeight();
+                    iterator.remove();
+                    spooled.remove(entry.getKey());
+                }
+            }
+        }
+
+        if (spoolDirectory == null)
+            return;
+        File bundleSpool = new File(spoolDirectory, String.valueOf(bundle.getBundleId()));
+        if (!bundleSpool.exists())
+            return;
+        try (Stream<Path> spooled = Files.walk(bundleSpool.toPath())) {
+            spooled.sorted(Comparator.reverseOrder())
+                    .forEach(spooledPath -> spooledPath.toFile().delete());
+        } catch (IOException ex) {
+            /* stale spool files are replaced on the next request */
+        }
+    }
+}
@@ -1,8 +1,45 @@
 package media.dee.dcms.admin.services;
 
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.concurrent.CompletionStage;
 
 public interface ComponentService {
     void bindCommunicationHandler(AdminWebsocketDispatcher websocketDispatcher);
 
     void unbindCommunicationHandler(AdminWebsocketDispatcher websocketDispatcher);
+
+    /**
+     * list of auto installed bundles, rebuilt only when components bind or unbind.
+     * @return json array of the bundles information, shouldn't be modified.
+     */
+    JsonNode getEssentialBundles();
+
+    /**
+     * version of the essential bundles list, incremented whenever a component binds or unbinds.
+     * @return the current version
+     */
+    long getVersion();
+
+    /**
+     * id of this node, versions are numbered by each node so a version is only meaningful along with its origin node.
+     * @return the node id
+     */
+    String getNodeId();
+
+    /**
+     * changes of the essential bundles list since a version, merged into one delta.
+     * @param since the version the client has
+     * @param origin id of the node the version was received from
+     * @return components.delta message, or components.full message with the whole list when the version is too old
+     * or of another node.
+     */
+    JsonNode getChanges(long since, String origin);
+
+    /**
+     * the node is ready when the components bound at startup are described, their resources are registered,
+     * and the clients are notified with them.
+     * @return completes when the node is ready
+     */
+    CompletionStage<Void> whenReady();
 }
@@ -0,0 +1,63 @@
+package media.dee.dcms.core.cache;
+
+/**
+ * Snapshot of cache statistics.
+ */
+public final class CacheStats {
+    private final long hits;
+    private final long misses;
+    private final long loadFailures;
+    private final long evictions;
+    private final long expirations;
+    private final long size;
+
+    public CacheStats(long hits, long misses, long loadFailures, long evictions, long expirations, long size) {
+        this.hits = hits;
+        this.misses = misses;
+        this.loadFailures = loadFailures;
+        this.evictions = evictions;
+        this.expirations = expirations;
+        this.size = size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getLoadFailures() {
+        return loadFailures;
+    }
+
+    /**
+     * @return entries removed to keep the cache within its maximum size.
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return entries removed as their time to live passed.
+     */
+    public long getExpirations() {
+        return expirations;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public double getHitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 1.0 : (double) hits / requests;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits: %d, misses: %d, hit rate: %.2f, load failures: %d, evictions: %d, expirations: %d, size: %d",
+                hits, misses, getHitRate(), loadFailures, evictions, expirations, size);
+    }
+}
@@ -0,0 +1,146 @@
+package media.dee.dcms.core.cache;
+
+import media.dee.dcms.core.db.CompactRecord;
+import media.dee.dcms.core.db.Record;
+import media.dee.dcms.core.services.ComponentService;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
+import org.osgi.service.log.LogService;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read through cache in front of the ComponentService implementation.<br/>
+ * registered with a higher ranking, so ComponentService consumers get the cached service, components are looked up
+ * in a bounded local cache, then in the cluster cache when a {@link ClusterCacheProvider} is available, then in the database.<br/>
+ * a component read from the database isn't shared on the cluster cache when any component is invalidated meanwhile,
+ * so a stale read never overwrites the invalidation.<br/>
+ * components are cached as immutable {@link CompactRecord} copies, since every caller gets the same instance.<br/>
+ * configuration: <code>cache.size</code> maximum components kept on a node, <code>cache.ttl</code> time to live in seconds.
+ */
+@Component(
+        immediate = true,
+        service = {ComponentService.class, ComponentCache.class},
+        property = {"service.ranking:Integer=100", CachingComponentService.CACHED_PROPERTY + "=true"}
+)
+public class CachingComponentService implements ComponentService, ComponentCache {
+    static final String CACHED_PROPERTY = "dcms.cache";
+
+    private static final int DEFAULT_SIZE = 10000;
+    private static final long DEFAULT_TTL_SECONDS = 300;
+
+    private ComponentService componentService;
+    private ClusterCacheProvider clusterCacheProvider;
+    private LogService log;
+    private LocalCache<Long, Record> localCache;
+    private ClusterCache<Long, Record> clusterCache;
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicBoolean unsharedLogged = new AtomicBoolean();
+
+    /**
+     * the decorated service, excluding this service.
+     */
+    @Reference(target = "(!(" + CACHED_PROPERTY + "=true))")
+    void setComponentService(ComponentService componentService) {
+        this.componentService = componentService;
+    }
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL, policyOption = ReferencePolicyOption.GREEDY)
+    void setClusterCacheProvider(ClusterCacheProvider clusterCacheProvider) {
+        this.clusterCacheProvider = clusterCacheProvider;
+    }
+
+    @Reference
+    void setLogService(LogService log) {
+        this.log = log;
+    }
+
+    private static long getLong(Map<String, Object> properties, String key, long defaultValue) {
+        Object value = properties.get(key);
+        return value == null ? defaultValue : Long.parseLong(value.toString());
+    }
+
+    @Activate
+    void activate(Map<String, Object> properties) {
+        int size = (int) getLong(properties, "cache.size", DEFAULT_SIZE);
+        long ttl = getLong(properties, "cache.ttl", DEFAULT_TTL_SECONDS);
+        localCache = new LocalCache<>(size, ttl, TimeUnit.SECONDS);
+        if (clusterCacheProvider != null)
+            clusterCache = clusterCacheProvider.getCache("components", ttl, TimeUnit.SECONDS, this::invalidated);
+        log.log(LogService.LOG_INFO, String.format("Component cache activated, size: %d, ttl: %d s, cluster: %b", size, ttl, clusterCache != null));
+    }
+
+    @Deactivate
+    void deactivate() {
+        if (clusterCache != null)
+            clusterCache.close();
+        log.log(LogService.LOG_INFO, String.format("Component cache deactivated [%s]", localCache.getStats()));
+    }
+
+    @Override
+    public Record findComponentById(long componentId) {
+        return localCache.get(componentId, this::load);
+    }
+
+    private Record load(long componentId) {
+        if (clusterCache != null) {
+            try {
+                Record record = clusterCache.get(componentId);
+                if (record != null)
+                    return record;
+            } catch (RuntimeException ex) {
+                log.log(LogService.LOG_WARNING, String.format("Error while reading component %d from the cluster cache", componentId), ex);
+            }
+        }
+
+        long generation = invalidations.get();
+        Record found = componentService.findComponentById(componentId);
+        Record record = found == null ? null : CompactRecord.copyOf(found);
+        if (record != null && clusterCache != null && generation == invalidations.get()) {
+            try {
+                if (!clusterCache.put(componentId, record) && unsharedLogged.compareAndSet(false, true))
+                    log.log(LogService.LOG_WARNING, String.format("Component %d can't be shared on the cluster cache, components with values which aren't serializable are cached locally only", componentId));
+                // an invalidation delivered while putting may have removed the entry before it's put
+                if (generation != invalidations.get())
+                    clusterCache.invalidate(componentId);
+            } catch (RuntimeException ex) {
+                log.log(LogService.LOG_WARNING, String.format("Error while caching component %d in the cluster cache", componentId), ex);
+            }
+        }
+        return record;
+    }
+
+    /**
+     * drop the local copy of a component invalidated by any node.
+     */
+    private void invalidated(Long componentId) {
+        invalidations.incrementAndGet();
+        localCache.invalidate(componentId);
+    }
+
+    @Override
+    public void invalidate(long componentId) {
+        invalidations.incrementAndGet();
+        localCache.invalidate(componentId);
+        if (clusterCache != null)
+            clusterCache.invalidate(componentId);
+    }
+
+    @Override
+    public void invalidateAll() {
+        invalidations.incrementAndGet();
+        localCache.invalidateAll();
+    }
+
+    @Override
+    public CacheStats getStats() {
+        return localCache.getStats();
+    }
+}
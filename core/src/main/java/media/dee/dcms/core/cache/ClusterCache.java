@@ -0,0 +1,30 @@
+package media.dee.dcms.core.cache;
+
+/**
+ * Cache shared by all nodes of the cluster, used as a second level behind a {@link LocalCache}.<br/>
+ * invalidating a key removes it from the cluster cache and notifies all nodes to drop their local copies.
+ */
+public interface ClusterCache<K, V> extends AutoCloseable {
+
+    /**
+     * @return the cached value or null when it's not cached.
+     */
+    V get(K key);
+
+    /**
+     * cache a value, values which can't be shared across the cluster are ignored.
+     * @return false when the value is ignored.
+     */
+    boolean put(K key, V value);
+
+    /**
+     * remove a key from the cluster cache and notify all nodes.
+     */
+    void invalidate(K key);
+
+    /**
+     * stop listening to invalidations, the shared entries stay for the other nodes.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,26 @@
+package media.dee.dcms.core.cache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Service creating {@link ClusterCache}s and {@link ClusterTopic}s, registered when a cluster is available.
+ */
+public interface ClusterCacheProvider {
+
+    /**
+     * @param name cache name, caches with the same name are shared by all nodes
+     * @param ttl time to live of an entry since it's cached
+     * @param unit unit of ttl
+     * @param invalidationListener notified with the keys invalidated by any node, including this node
+     * @return the cluster cache
+     */
+    <K, V> ClusterCache<K, V> getCache(String name, long ttl, TimeUnit unit, Consumer<K> invalidationListener);
+
+    /**
+     * @param name topic name, topics with the same name are shared by all nodes
+     * @param listener notified with the messages published by the other nodes
+     * @return the cluster topic
+     */
+    <T> ClusterTopic<T> getTopic(String name, Consumer<T> listener);
+}
@@ -0,0 +1,19 @@
+package media.dee.dcms.core.cache;
+
+/**
+ * Topic shared by all nodes of the cluster, messages are delivered to the listeners of the other nodes.<br/>
+ * a node publishing a message isn't notified of it, it handles its own messages before publishing them.
+ */
+public interface ClusterTopic<T> extends AutoCloseable {
+
+    /**
+     * deliver a message to the other nodes.
+     */
+    void publish(T message);
+
+    /**
+     * stop listening to the topic.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,14 @@
+package media.dee.dcms.core.cache;
+
+/**
+ * Cache of the components found by {@link media.dee.dcms.core.services.ComponentService}.<br/>
+ * services writing components should invalidate them, the invalidation is propagated to all nodes of the cluster.
+ */
+public interface ComponentCache {
+    void invalidate(long componentId);
+    /**
+     * drop all components cached by this node.
+     */
+    void invalidateAll();
+    CacheStats getStats();
+}
@@ -0,0 +1,178 @@
+package media.dee.dcms.core.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Inverted index from node ids to the cache keys rendered from them.<br/>
+ * the node ids of each key are kept in a {@link LongHashSet}, nodes are indexed in a primitive open addressing
+ * table, so an update of a node finds exactly the keys to invalidate.
+ */
+public class DependencyIndex<K> {
+    private static final long EMPTY = 0;
+
+    private final Map<K, LongHashSet> dependencies = new HashMap<>();
+    private long[] nodes = new long[16];
+    private Object[] keys = new Object[16];
+    private Set<K> emptyNodeKeys;
+    private int size = 0;
+
+    private int slot(long node) {
+        return LongHashSet.hash(node) & (nodes.length - 1);
+    }
+
+    private int find(long node) {
+        int i = slot(node);
+        while (nodes[i] != EMPTY) {
+            if (nodes[i] == node)
+                return i;
+            i = (i + 1) & (nodes.length - 1);
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<K> keysOf(long node, boolean create) {
+        if (node == EMPTY) {
+            if (emptyNodeKeys == null && create)
+                emptyNodeKeys = new HashSet<>();
+            return emptyNodeKeys;
+        }
+        int i = find(node);
+        if (i >= 0)
+            return (Set<K>) keys[i];
+        if (!create)
+            return null;
+        if ((size + 1) * 4 > nodes.length * 3)
+            rehash(nodes.length << 1);
+        i = slot(node);
+        while (nodes[i] != EMPTY)
+            i = (i + 1) & (nodes.length - 1);
+        Set<K> created = new HashSet<>(4);
+        nodes[i] = node;
+        keys[i] = created;
+        ++size;
+        return created;
+    }
+
+    private void removeNode(long node) {
+        if (node == EMPTY) {
+            emptyNodeKeys = null;
+            return;
+        }
+        int gap = find(node);
+        if (gap < 0)
+            return;
+        int mask = nodes.length - 1;
+        int i = gap;
+        while (true) {
+            i = (i + 1) & mask;
+            long current = nodes[i];
+            if (current == EMPTY)
+                break;
+            int home = slot(current);
+            boolean movable = i > gap ? (home <= gap || home > i) : (home <= gap && home > i);
+            if (movable) {
+                nodes[gap] = current;
+                keys[gap] = keys[i];
+                gap = i;
+            }
+        }
+        nodes[gap] = EMPTY;
+        keys[gap] = null;
+        --size;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldNodes = nodes;
+        Object[] oldKeys = keys;
+        nodes = new long[capacity];
+        keys = new Object[capacity];
+        for (int j = 0; j < oldNodes.length; ++j)
+            if (oldNodes[j] != EMPTY) {
+                int i = slot(oldNodes[j]);
+                while (nodes[i] != EMPTY)
+                    i = (i + 1) & (capacity - 1);
+                nodes[i] = oldNodes[j];
+                keys[i] = oldKeys[j];
+            }
+    }
+
+    /**
+     * index a key, replacing its previous dependencies.
+     * @param key cache key
+     * @param nodeIds nodes the cached value is rendered from, owned by the index after the call
+     */
+    public synchronized void put(K key, LongHashSet nodeIds) {
+        remove(key);
+        dependencies.put(key, nodeIds);
+        nodeIds.forEach(node -> keysOf(node, true).add(key));
+    }
+
+    public synchronized void remove(K key) {
+        LongHashSet nodeIds = dependencies.remove(key);
+        if (nodeIds == null)
+            return;
+        nodeIds.forEach(node -> {
+            Set<K> nodeKeys = keysOf(node, false);
+            if (nodeKeys != null && nodeKeys.remove(key) && nodeKeys.isEmpty())
+                removeNode(node);
+        });
+    }
+
+    /**
+     * @return dependencies of a key or null when it's not indexed, shouldn't be modified.
+     */
+    public synchronized LongHashSet getDependencies(K key) {
+        return dependencies.get(key);
+    }
+
+    /**
+     * @return keys depending on a node.
+     */
+    public synchronized Collection<K> getKeys(long nodeId) {
+        Set<K> nodeKeys = keysOf(nodeId, false);
+        return nodeKeys == null ? new ArrayList<>() : new ArrayList<>(nodeKeys);
+    }
+
+    /**
+     * remove the keys depending on a node from the index.
+     * @return the removed keys to invalidate
+     */
+    public synchronized Collection<K> invalidate(long nodeId) {
+        Set<K> nodeKeys = keysOf(nodeId, false);
+        if (nodeKeys == null)
+            return new ArrayList<>();
+        List<K> removed = new ArrayList<>(nodeKeys);
+        for (K key : removed)
+            remove(key);
+        return removed;
+    }
+
+    public synchronized void clear() {
+        dependencies.clear();
+        nodes = new long[16];
+        keys = new Object[16];
+        emptyNodeKeys = null;
+        size = 0;
+    }
+
+    /**
+     * @return number of indexed keys.
+     */
+    public synchronized int size() {
+        return dependencies.size();
+    }
+
+    /**
+     * @return number of indexed nodes.
+     */
+    public synchronized int nodeCount() {
+        return size + (emptyNodeKeys == null ? 0 : 1);
+    }
+}
@@ -0,0 +1,102 @@
+package media.dee.dcms.core.cache;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.core.ITopic;
+import com.hazelcast.core.Member;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Cluster caches over Hazelcast maps, invalidations are published on a topic per cache.<br/>
+ * cluster topics are plain Hazelcast topics, skipping the messages published by this member.<br/>
+ * hazelcast is an optional import of the core bundle, without it this component isn't activated and caches stay local.
+ */
+@Component(service = ClusterCacheProvider.class)
+public class HazelcastClusterCacheProvider implements ClusterCacheProvider {
+
+    private HazelcastInstance hazelcastNode;
+
+    @Reference
+    void setHazelcastNode(HazelcastInstance instance) {
+        this.hazelcastNode = instance;
+    }
+
+    @Override
+    public <K, V> ClusterCache<K, V> getCache(String name, long ttl, TimeUnit unit, Consumer<K> invalidationListener) {
+        return new HazelcastClusterCache<>(hazelcastNode, name, ttl, unit, invalidationListener);
+    }
+
+    @Override
+    public <T> ClusterTopic<T> getTopic(String name, Consumer<T> listener) {
+        return new HazelcastClusterTopic<>(hazelcastNode, name, listener);
+    }
+
+    private static class HazelcastClusterTopic<T> implements ClusterTopic<T> {
+        private final ITopic<T> topic;
+        private final String listenerId;
+
+        HazelcastClusterTopic(HazelcastInstance hazelcastNode, String name, Consumer<T> listener) {
+            this.topic = hazelcastNode.getTopic(String.format("topic:%s", name));
+            this.listenerId = topic.addMessageListener(message -> {
+                Member publisher = message.getPublishingMember();
+                if (publisher == null || !publisher.localMember())
+                    listener.accept(message.getMessageObject());
+            });
+        }
+
+        @Override
+        public void publish(T message) {
+            topic.publish(message);
+        }
+
+        @Override
+        public void close() {
+            topic.removeMessageListener(listenerId);
+        }
+    }
+
+    private static class HazelcastClusterCache<K, V> implements ClusterCache<K, V> {
+        private final IMap<K, V> map;
+        private final ITopic<K> invalidations;
+        private final String listenerId;
+        private final long ttl;
+        private final TimeUnit unit;
+
+        HazelcastClusterCache(HazelcastInstance hazelcastNode, String name, long ttl, TimeUnit unit, Consumer<K> invalidationListener) {
+            this.map = hazelcastNode.getMap(String.format("cache:%s", name));
+            this.invalidations = hazelcastNode.getTopic(String.format("cache:%s:invalidate", name));
+            this.listenerId = invalidations.addMessageListener(message -> invalidationListener.accept(message.getMessageObject()));
+            this.ttl = ttl;
+            this.unit = unit;
+        }
+
+        @Override
+        public V get(K key) {
+            return map.get(key);
+        }
+
+        @Override
+        public boolean put(K key, V value) {
+            if (!(value instanceof Serializable))
+                return false;
+            map.set(key, value, ttl, unit);
+            return true;
+        }
+
+        @Override
+        public void invalidate(K key) {
+            map.delete(key);
+            invalidations.publish(key);
+        }
+
+        @Override
+        public void close() {
+            invalidations.removeMessageListener(listenerId);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package media.dee.dcms.core.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Bounded in memory cache, the least recently used entry is evicted when the cache is full and entries expire
+ * after their time to live.<br/>
+ * values are loaded outside the cache lock, so a slow loader doesn't block readers of other keys,
+ * a value loaded while the cache was invalidated is returned but not cached, as it may be stale.
+ */
+public class LocalCache<K, V> {
+
+    private static class CacheEntry<V> {
+        private final V value;
+        private final long expiresAt;
+
+        CacheEntry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LinkedHashMap<K, CacheEntry<V>> entries;
+    private long invalidations = 0;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * @param maxSize maximum number of entries
+     * @param ttl time to live of an entry since it's cached
+     * @param unit unit of ttl
+     */
+    public LocalCache(int maxSize, long ttl, TimeUnit unit) {
+        if (maxSize < 1)
+            throw new IllegalArgumentException(String.format("Invalid cache size: %d", maxSize));
+        this.maxSize = maxSize;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.entries = new LinkedHashMap<K, CacheEntry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+                if (size() <= LocalCache.this.maxSize)
+                    return false;
+                evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @return the cached value or null when it's not cached or expired.
+     */
+    public V getIfPresent(K key) {
+        synchronized (entries) {
+            CacheEntry<V> entry = entries.get(key);
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            if (entry.expiresAt - System.nanoTime() <= 0) {
+                entries.remove(key);
+                expirations.increment();
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return entry.value;
+        }
+    }
+
+    /**
+     * get the cached value or load it and cache it, null values are not cached.
+     * @param key the key to get
+     * @param loader loads the value of the key on a miss
+     * @return the value of the key
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        V value = getIfPresent(key);
+        if (value != null)
+            return value;
+
+        long generation;
+        synchronized (entries) {
+            generation = invalidations;
+        }
+        try {
+            value = loader.apply(key);
+        } catch (RuntimeException ex) {
+            loadFailures.increment();
+            throw ex;
+        }
+        if (value != null) {
+            synchronized (entries) {
+                if (generation == invalidations)
+                    entries.put(key, new CacheEntry<>(value, System.nanoTime() + ttlNanos));
+            }
+        }
+        return value;
+    }
+
+    public void put(K key, V value) {
+        synchronized (entries) {
+            entries.put(key, new CacheEntry<>(value, System.nanoTime() + ttlNanos));
+        }
+    }
+
+    public void invalidate(K key) {
+        synchronized (entries) {
+            ++invalidations;
+            entries.remove(key);
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            ++invalidations;
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public CacheStats getStats() {
+        return new CacheStats(hits.sum(), misses.sum(), loadFailures.sum(), evictions.sum(), expirations.sum(), size());
+    }
+}
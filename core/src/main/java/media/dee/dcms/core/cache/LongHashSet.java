@@ -0,0 +1,178 @@
+package media.dee.dcms.core.cache;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Set of primitive longs over an open addressing table, holding node ids without boxing them.<br/>
+ * not thread safe.
+ */
+public final class LongHashSet {
+    private static final long EMPTY = 0;
+
+    private long[] keys;
+    private int mask;
+    private int resizeAt;
+    private int size = 0;
+    private boolean hasEmptyKey = false;
+
+    public LongHashSet() {
+        this(8);
+    }
+
+    /**
+     * @param expectedSize number of elements the set holds without growing
+     */
+    public LongHashSet(int expectedSize) {
+        allocate(tableSize(expectedSize));
+    }
+
+    public LongHashSet(LongHashSet other) {
+        this.keys = other.keys.clone();
+        this.mask = other.mask;
+        this.resizeAt = other.resizeAt;
+        this.size = other.size;
+        this.hasEmptyKey = other.hasEmptyKey;
+    }
+
+    private static int tableSize(int expectedSize) {
+        int capacity = 8;
+        while (capacity * 3 / 4 < expectedSize)
+            capacity <<= 1;
+        return capacity;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        mask = capacity - 1;
+        resizeAt = capacity * 3 / 4;
+    }
+
+    static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int slot(long key) {
+        return hash(key) & mask;
+    }
+
+    public boolean add(long key) {
+        if (key == EMPTY) {
+            if (hasEmptyKey)
+                return false;
+            hasEmptyKey = true;
+            ++size;
+            return true;
+        }
+        int i = slot(key);
+        while (keys[i] != EMPTY) {
+            if (keys[i] == key)
+                return false;
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        if (++size > resizeAt)
+            rehash(keys.length << 1);
+        return true;
+    }
+
+    public void addAll(LongHashSet other) {
+        other.forEach(this::add);
+    }
+
+    public boolean contains(long key) {
+        if (key == EMPTY)
+            return hasEmptyKey;
+        int i = slot(key);
+        while (keys[i] != EMPTY) {
+            if (keys[i] == key)
+                return true;
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    public boolean remove(long key) {
+        if (key == EMPTY) {
+            if (!hasEmptyKey)
+                return false;
+            hasEmptyKey = false;
+            --size;
+            return true;
+        }
+        int gap = slot(key);
+        while (keys[gap] != key) {
+            if (keys[gap] == EMPTY)
+                return false;
+            gap = (gap + 1) & mask;
+        }
+        // shift back the following keys of the probe sequence, so lookups never stop at the removed slot
+        int i = gap;
+        while (true) {
+            i = (i + 1) & mask;
+            long current = keys[i];
+            if (current == EMPTY)
+                break;
+            int home = slot(current);
+            boolean movable = i > gap ? (home <= gap || home > i) : (home <= gap && home > i);
+            if (movable) {
+                keys[gap] = current;
+                gap = i;
+            }
+        }
+        keys[gap] = EMPTY;
+        --size;
+        return true;
+    }
+
+    private void rehash(int capacity) {
+        long[] old = keys;
+        allocate(capacity);
+        for (long key : old)
+            if (key != EMPTY) {
+                int i = slot(key);
+                while (keys[i] != EMPTY)
+                    i = (i + 1) & mask;
+                keys[i] = key;
+            }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        hasEmptyKey = false;
+        size = 0;
+    }
+
+    public void forEach(LongConsumer consumer) {
+        if (hasEmptyKey)
+            consumer.accept(EMPTY);
+        for (long key : keys)
+            if (key != EMPTY)
+                consumer.accept(key);
+    }
+
+    public long[] toArray() {
+        long[] result = new long[size];
+        int index = 0;
+        if (hasEmptyKey)
+            result[index++] = EMPTY;
+        for (long key : keys)
+            if (key != EMPTY)
+                result[index++] = key;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+}
@@ -0,0 +1,34 @@
+package media.dee.dcms.core.db;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Non-blocking variant of {@link GraphDatabaseService}, queries return immediately and complete their stage when the
+ * result is available, so many queries can be in flight on few threads.<br/>
+ * fetchOne stages complete exceptionally with {@link NoSuchRecordException} when the query has no records.
+ */
+public interface AsyncGraphDatabaseService<R extends Record> {
+
+    CompletionStage<Void> run(String query, Map<String, Object> parameters, Consumer<R> consumer);
+    CompletionStage<List<R>> run(String query, Map<String, Object> parameters);
+    CompletionStage<Void> fetchOne(String query, Map<String, Object> parameters, Consumer<R> consumer);
+    <T> CompletionStage<T> fetchOne(String query, Map<String, Object> parameters, Function<R, T> mapper);
+    CompletionStage<R> fetchOne(String query, Map<String, Object> parameters);
+
+    /**
+     * adapt a blocking service by running its queries on an executor.<br/>
+     * it doesn't save threads, the executor bounds the number of queries blocked at once,
+     * implementations backed by a driver with async sessions should implement this interface directly.
+     * @param database the blocking service
+     * @param executor executor to run the queries on
+     * @return async view of the service
+     */
+    static <R extends Record> AsyncGraphDatabaseService<R> of(GraphDatabaseService<R> database, Executor executor) {
+        return new ExecutorAsyncGraphDatabaseService<>(database, executor);
+    }
+}
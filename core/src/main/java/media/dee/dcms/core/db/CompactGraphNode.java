@@ -0,0 +1,40 @@
+package media.dee.dcms.core.db;
+
+import java.io.ObjectStreamException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Immutable graph node over a shared {@link RecordSchema}, see {@link CompactRecord}.
+ */
+public class CompactGraphNode extends CompactRecord implements GraphDatabaseService.GraphNode {
+    private final String[] labels;
+    private final long rawId;
+
+    CompactGraphNode(Builder builder, String[] labels, long rawId) {
+        super(builder);
+        this.labels = labels;
+        this.rawId = rawId;
+    }
+
+    @Override
+    public Collection<String> getLabels() {
+        return Collections.unmodifiableList(Arrays.asList(labels));
+    }
+
+    @Override
+    public long getRawId() {
+        return rawId;
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return containsKey(key);
+    }
+
+    @Override
+    protected Object writeReplace() throws ObjectStreamException {
+        return new SerializedRecord(this, labels, rawId);
+    }
+}
@@ -0,0 +1,332 @@
+package media.dee.dcms.core.db;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Immutable record holding its values in flat arrays over a shared {@link RecordSchema}.<br/>
+ * long, double and boolean values are stored as raw bits and boxed only when read through the Map interface,
+ * {@link #getLong(String)}, {@link #getDouble(String)} and {@link #getBoolean(String)} read them without boxing.<br/>
+ * records are serialized as their keys and values, the schema isn't shared with the deserialized copy.
+ */
+public class CompactRecord extends AbstractMap<String, Object> implements Record, Serializable {
+    private static final byte NULL = 0;
+    private static final byte REFERENCE = 1;
+    private static final byte LONG = 2;
+    private static final byte DOUBLE = 3;
+    private static final byte BOOLEAN = 4;
+    private static final byte NESTED = 5;
+
+    /**
+     * converted nested value, final field so the value is safely published to other readers of the record.
+     */
+    private static final class Converted {
+        private final Object value;
+
+        Converted(Object value) {
+            this.value = value;
+        }
+    }
+
+    private final RecordSchema schema;
+    private final byte[] types;
+    private final Object[] references;
+    private final long[] bits;
+
+    protected CompactRecord(Builder builder) {
+        this.schema = builder.schema;
+        this.types = builder.types;
+        this.references = builder.references;
+        this.bits = builder.bits;
+    }
+
+    /**
+     * Builds a record of a schema, each value is set once by its index in the schema, unset values are null.<br/>
+     * the record shares the arrays of its builder, so the builder can't be changed once the record is built.
+     */
+    public static class Builder {
+        private final RecordSchema schema;
+        private final byte[] types;
+        private final Object[] references;
+        private long[] bits;
+        private boolean built = false;
+
+        Builder(RecordSchema schema) {
+            this.schema = schema;
+            this.types = new byte[schema.size()];
+            this.references = new Object[schema.size()];
+        }
+
+        private void checkOpen() {
+            if (built)
+                throw new IllegalStateException("Record is already built");
+        }
+
+        private void setBits(int index, byte type, long value) {
+            checkOpen();
+            if (bits == null)
+                bits = new long[types.length];
+            types[index] = type;
+            references[index] = null;
+            bits[index] = value;
+        }
+
+        public Builder set(int index, long value) {
+            setBits(index, LONG, value);
+            return this;
+        }
+
+        public Builder set(int index, double value) {
+            setBits(index, DOUBLE, Double.doubleToRawLongBits(value));
+            return this;
+        }
+
+        public Builder set(int index, boolean value) {
+            setBits(index, BOOLEAN, value ? 1 : 0);
+            return this;
+        }
+
+        /**
+         * set a value, boxed longs, doubles and booleans are stored unboxed. other boxed types are kept as they are,
+         * so the record reads back values of the same type.
+         */
+        public Builder set(int index, Object value) {
+            checkOpen();
+            if (value == null) {
+                types[index] = NULL;
+                references[index] = null;
+            } else if (value instanceof Long)
+                set(index, ((Long) value).longValue());
+            else if (value instanceof Double)
+                set(index, ((Double) value).doubleValue());
+            else if (value instanceof Boolean)
+                set(index, ((Boolean) value).booleanValue());
+            else {
+                types[index] = REFERENCE;
+                references[index] = value;
+            }
+            return this;
+        }
+
+        /**
+         * set a value converted by the schema converter on its first access.
+         */
+        public Builder setNested(int index, Object value) {
+            checkOpen();
+            types[index] = value == null ? NULL : NESTED;
+            references[index] = value;
+            return this;
+        }
+
+        public Builder set(String key, Object value) {
+            int index = schema.indexOf(key);
+            if (index < 0)
+                throw new IllegalArgumentException(String.format("Key is not a part of the record schema: %s", key));
+            return set(index, value);
+        }
+
+        private void checkBuilt() {
+            checkOpen();
+            built = true;
+        }
+
+        public CompactRecord build() {
+            checkBuilt();
+            return new CompactRecord(this);
+        }
+
+        /**
+         * @param labels node labels
+         * @param rawId node id
+         * @return the values as a graph node
+         */
+        public CompactGraphNode buildNode(String[] labels, long rawId) {
+            checkBuilt();
+            return new CompactGraphNode(this, labels, rawId);
+        }
+    }
+
+    /**
+     * @param values record values
+     * @return an immutable copy of the values, nested maps and lists are copied too.
+     * graph nodes keep their labels and id, compact records are returned as they are.
+     */
+    public static CompactRecord copyOf(Map<String, ?> values) {
+        if (values instanceof CompactRecord)
+            return (CompactRecord) values;
+        List<String> keys = new ArrayList<>(values.size());
+        List<Object> copies = new ArrayList<>(values.size());
+        for (Entry<String, ?> entry : values.entrySet()) {
+            keys.add(entry.getKey());
+            copies.add(copyValue(entry.getValue()));
+        }
+        Builder builder = RecordSchema.of(keys).record();
+        for (int i = 0; i < copies.size(); ++i)
+            builder.set(i, copies.get(i));
+        if (values instanceof GraphDatabaseService.GraphNode) {
+            GraphDatabaseService.GraphNode node = (GraphDatabaseService.GraphNode) values;
+            return builder.buildNode(node.getLabels().toArray(new String[0]), node.getRawId());
+        }
+        return builder.build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object copyValue(Object value) {
+        if (value instanceof Map)
+            return copyOf((Map<String, ?>) value);
+        if (value instanceof Collection) {
+            List<Object> copies = new ArrayList<>(((Collection<?>) value).size());
+            for (Object item : (Collection<?>) value)
+                copies.add(copyValue(item));
+            return Collections.unmodifiableList(copies);
+        }
+        return value;
+    }
+
+    /**
+     * serialized form of a record, rebuilt over a new schema when it's read.
+     */
+    static final class SerializedRecord implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String[] keys;
+        private final Object[] values;
+        private final String[] labels;
+        private final long rawId;
+
+        SerializedRecord(CompactRecord record, String[] labels, long rawId) {
+            this.keys = record.schema.getKeys().toArray(new String[0]);
+            this.values = new Object[keys.length];
+            for (int i = 0; i < keys.length; ++i)
+                values[i] = record.valueAt(i);
+            this.labels = labels;
+            this.rawId = rawId;
+        }
+
+        private Object readResolve() throws ObjectStreamException {
+            Builder builder = RecordSchema.of(keys).record();
+            for (int i = 0; i < keys.length; ++i)
+                builder.set(i, values[i]);
+            return labels == null ? builder.build() : builder.buildNode(labels, rawId);
+        }
+    }
+
+    protected Object writeReplace() throws ObjectStreamException {
+        return new SerializedRecord(this, null, 0);
+    }
+
+    public RecordSchema getSchema() {
+        return schema;
+    }
+
+    protected Object valueAt(int index) {
+        switch (types[index]) {
+            case REFERENCE:
+                return references[index];
+            case LONG:
+                return bits[index];
+            case DOUBLE:
+                return Double.longBitsToDouble(bits[index]);
+            case BOOLEAN:
+                return bits[index] != 0;
+            case NESTED:
+                return convertNested(index);
+            default:
+                return null;
+        }
+    }
+
+    private Object convertNested(int index) {
+        Object value = references[index];
+        if (value instanceof Converted)
+            return ((Converted) value).value;
+        // converting twice on a race yields equal values, the record stays logically immutable
+        Object converted = schema.convertNested(value);
+        references[index] = new Converted(converted);
+        return converted;
+    }
+
+    private int requireIndex(String key, byte type) {
+        int index = schema.indexOf(key);
+        if (index < 0 || types[index] != type)
+            throw new ClassCastException(String.format("Record value of %s is not a %s", key,
+                    type == LONG ? "long" : type == DOUBLE ? "double" : "boolean"));
+        return index;
+    }
+
+    public long getLong(String key) {
+        return bits[requireIndex(key, LONG)];
+    }
+
+    public double getDouble(String key) {
+        return Double.longBitsToDouble(bits[requireIndex(key, DOUBLE)]);
+    }
+
+    public boolean getBoolean(String key) {
+        return bits[requireIndex(key, BOOLEAN)] != 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key) {
+        int index = schema.indexOf(key);
+        return index < 0 ? null : (T) valueAt(index);
+    }
+
+    @Override
+    public Object get(Object key) {
+        int index = schema.indexOf(key);
+        return index < 0 ? null : valueAt(index);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return schema.indexOf(key) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return types.length;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<Entry<String, Object>>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new Iterator<Entry<String, Object>>() {
+                    private int index = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return index < types.length;
+                    }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        if (index >= types.length)
+                            throw new NoSuchElementException();
+                        Entry<String, Object> entry = new SimpleImmutableEntry<>(schema.getKey(index), valueAt(index));
+                        ++index;
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return types.length;
+            }
+        };
+    }
+}
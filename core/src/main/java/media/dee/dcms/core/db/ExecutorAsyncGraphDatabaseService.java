@@ -0,0 +1,71 @@
+package media.dee.dcms.core.db;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * {@link AsyncGraphDatabaseService} running the queries of a blocking {@link GraphDatabaseService} on an executor.
+ */
+class ExecutorAsyncGraphDatabaseService<R extends Record> implements AsyncGraphDatabaseService<R> {
+    private final GraphDatabaseService<R> database;
+    private final Executor executor;
+
+    ExecutorAsyncGraphDatabaseService(GraphDatabaseService<R> database, Executor executor) {
+        this.database = database;
+        this.executor = executor;
+    }
+
+    private <T> CompletionStage<T> submit(Callable<T> query) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    result.complete(query.call());
+                } catch (Throwable ex) {
+                    result.completeExceptionally(ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            result.completeExceptionally(ex);
+        }
+        return result;
+    }
+
+    @Override
+    public CompletionStage<Void> run(String query, Map<String, Object> parameters, Consumer<R> consumer) {
+        return submit(() -> {
+            database.run(query, parameters, consumer);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletionStage<List<R>> run(String query, Map<String, Object> parameters) {
+        return submit(() -> database.run(query, parameters));
+    }
+
+    @Override
+    public CompletionStage<Void> fetchOne(String query, Map<String, Object> parameters, Consumer<R> consumer) {
+        return submit(() -> {
+            database.fetchOne(query, parameters, consumer);
+            return null;
+        });
+    }
+
+    @Override
+    public <T> CompletionStage<T> fetchOne(String query, Map<String, Object> parameters, Function<R, T> mapper) {
+        return submit(() -> database.fetchOne(query, parameters, mapper));
+    }
+
+    @Override
+    public CompletionStage<R> fetchOne(String query, Map<String, Object> parameters) {
+        return submit(() -> database.fetchOne(query, parameters));
+    }
+}
@@ -4,6 +4,8 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -12,12 +14,60 @@ import java.util.function.Function;
  */
 public interface GraphDatabaseService<R extends Record> {
 
+    int DEFAULT_FETCH_SIZE = 256;
+
     void run(String query, Map<String, Object> parameters, Consumer<R> consumer);
     List<R> run(String query, Map<String, Object> parameters);
     void fetchOne(String query, Map<String, Object> parameters, Consumer<R> consumer) throws NoSuchRecordException;
     <T> T fetchOne(String query, Map<String, Object> parameters, Function<R, T> mapper) throws NoSuchRecordException;
     R fetchOne(String query, Map<String, Object> parameters) throws NoSuchRecordException;
 
+    /**
+     * run a query and stream its records through a cursor, at most fetch size records are held ahead of the consumer.<br/>
+     * implementations backed by a driver with native result streaming should override it, others override it with
+     * {@link #cursor(String, Map, int, Executor)} over a producer executor they own.
+     * @param query the query to run
+     * @param parameters the query parameters
+     * @param fetchSize maximum number of records fetched ahead of the consumer
+     * @return cursor over the query records, must be closed if not consumed to the end.
+     * @throws UnsupportedOperationException when the service doesn't stream records
+     */
+    default RecordCursor<R> cursor(String query, Map<String, Object> parameters, int fetchSize) {
+        throw new UnsupportedOperationException("Record cursors aren't supported by the database service");
+    }
+
+    /**
+     * run a query and stream its records through a cursor, running the consumer based {@link #run(String, Map, Consumer)}
+     * on a producer of the given executor.<br/>
+     * each open cursor holds a producer until it's consumed, closed or collected, so a bounded executor bounds the
+     * open cursors and cursors beyond it wait for a producer. the executor should be owned by the service and shut down
+     * when the service is deactivated.
+     * @param query the query to run
+     * @param parameters the query parameters
+     * @param fetchSize maximum number of records fetched ahead of the consumer
+     * @param producers executor running the queries
+     * @return cursor over the query records, must be closed if not consumed to the end.
+     */
+    default RecordCursor<R> cursor(String query, Map<String, Object> parameters, int fetchSize, Executor producers) {
+        return new QueuedRecordCursor<>(consumer -> run(query, parameters, consumer), fetchSize, producers);
+    }
+
+    default RecordCursor<R> cursor(String query, Map<String, Object> parameters) {
+        return cursor(query, parameters, DEFAULT_FETCH_SIZE);
+    }
+
+    /**
+     * run a batch of statements, statements sharing the same query and parameter names are merged into one UNWIND query,
+     * so the round trips scale with the distinct query shapes instead of the number of statements.<br/>
+     * records of merged statements carry the statement index in the batch as <code>__idx</code>.
+     * implementations backed by a driver with pipelining should override it to send the queries over one session.
+     * @param statements statements to run
+     * @return the records of each statement, in the order of the statements.
+     */
+    default List<CompletableFuture<List<R>>> runBatch(List<Statement> statements) {
+        return new QueryBatch<>(this).run(statements);
+    }
+
     /**
      * GraphNode an abstraction of GraphDatabase to get a node information retrieved by a query
      */
@@ -0,0 +1,291 @@
+package media.dee.dcms.core.db;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Query parsed once and shared by its text, parameters are bound by position in the order they first appear in the query.<br/>
+ * <pre>
+ *     PreparedQuery byId = PreparedQuery.prepare("MATCH (n) WHERE id(n) = $id RETURN n");
+ *     Record record = byId.fetchOne(database, 42L);
+ * </pre>
+ * bound parameters are a fixed view over the given values, binding doesn't allocate a map per call.
+ * each prepared query keeps its execution count and latency, {@link #getPreparedQueries()} lists them to find slow queries.
+ */
+public final class PreparedQuery {
+    /**
+     * queries built by formatting values into the text would grow the cache without bound,
+     * once it's full new queries are prepared without being cached.
+     */
+    private static final int MAX_CACHED_QUERIES = 1024;
+    private static final ConcurrentMap<String, PreparedQuery> cache = new ConcurrentHashMap<>();
+
+    private final String query;
+    private final String[] parameterNames;
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    private PreparedQuery(String query) {
+        this.query = query;
+        this.parameterNames = parseParameterNames(query);
+    }
+
+    /**
+     * get the prepared query of a query text, the query is parsed once and shared by all callers.
+     * @param query the query, parameters are written as $name or {name}
+     * @return the prepared query
+     */
+    public static PreparedQuery prepare(String query) {
+        PreparedQuery prepared = cache.get(query);
+        if (prepared != null)
+            return prepared;
+        if (cache.size() >= MAX_CACHED_QUERIES)
+            return new PreparedQuery(query);
+        return cache.computeIfAbsent(query, PreparedQuery::new);
+    }
+
+    /**
+     * @return cached prepared queries along with their statistics.
+     */
+    public static Collection<PreparedQuery> getPreparedQueries() {
+        return Collections.unmodifiableCollection(cache.values());
+    }
+
+    private static String[] parseParameterNames(String query) {
+        Set<String> names = new LinkedHashSet<>();
+        int length = query.length();
+        int i = 0;
+        while (i < length) {
+            char c = query.charAt(i);
+            if (c == '\'' || c == '"' || c == '`') {
+                // skip literals and escaped names
+                int end = i + 1;
+                while (end < length && query.charAt(end) != c)
+                    end += query.charAt(end) == '\\' ? 2 : 1;
+                i = end + 1;
+            } else if (c == '/' && i + 1 < length && query.charAt(i + 1) == '/') {
+                int end = query.indexOf('\n', i);
+                i = end < 0 ? length : end + 1;
+            } else if (c == '$') {
+                int end = i + 1;
+                while (end < length && Character.isJavaIdentifierPart(query.charAt(end)))
+                    ++end;
+                if (end > i + 1)
+                    names.add(query.substring(i + 1, end));
+                i = end;
+            } else if (c == '{') {
+                int start = i + 1;
+                while (start < length && Character.isWhitespace(query.charAt(start)))
+                    ++start;
+                int end = start;
+                while (end < length && Character.isJavaIdentifierPart(query.charAt(end)))
+                    ++end;
+                int close = end;
+                while (close < length && Character.isWhitespace(query.charAt(close)))
+                    ++close;
+                if (end > start && close < length && query.charAt(close) == '}') {
+                    names.add(query.substring(start, end));
+                    i = close + 1;
+                } else {
+                    ++i;
+                }
+            } else {
+                ++i;
+            }
+        }
+        return names.toArray(new String[names.size()]);
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    /**
+     * @return parameter names in the order they are bound.
+     */
+    public List<String> getParameterNames() {
+        return Collections.unmodifiableList(Arrays.asList(parameterNames));
+    }
+
+    /**
+     * bind parameter values by position.
+     * @param values a value for each parameter in the order of {@link #getParameterNames()}
+     * @return read only parameters map backed by the values
+     * @throws IllegalArgumentException when the number of values doesn't match the query parameters
+     */
+    public Map<String, Object> bind(Object... values) {
+        if (values.length != parameterNames.length)
+            throw new IllegalArgumentException(String.format("Query expects %d parameter(s) %s, got %d: %s",
+                    parameterNames.length, Arrays.toString(parameterNames), values.length, query));
+        return new BoundParameters(parameterNames, values);
+    }
+
+    public <R extends Record> void run(GraphDatabaseService<R> database, Consumer<R> consumer, Object... values) {
+        Map<String, Object> parameters = bind(values);
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            database.run(query, parameters, consumer);
+            succeeded = true;
+        } finally {
+            record(start, succeeded);
+        }
+    }
+
+    public <R extends Record> List<R> run(GraphDatabaseService<R> database, Object... values) {
+        Map<String, Object> parameters = bind(values);
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            List<R> records = database.run(query, parameters);
+            succeeded = true;
+            return records;
+        } finally {
+            record(start, succeeded);
+        }
+    }
+
+    public <R extends Record> R fetchOne(GraphDatabaseService<R> database, Object... values) throws NoSuchRecordException {
+        Map<String, Object> parameters = bind(values);
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            R record = database.fetchOne(query, parameters);
+            succeeded = true;
+            return record;
+        } finally {
+            record(start, succeeded);
+        }
+    }
+
+    /**
+     * @return the query as a batch statement bound to the given values.
+     */
+    public Statement statement(Object... values) {
+        return new Statement(query, bind(values));
+    }
+
+    private void record(long start, boolean succeeded) {
+        long elapsed = System.nanoTime() - start;
+        executions.increment();
+        totalNanos.add(elapsed);
+        if (!succeeded)
+            failures.increment();
+        long max;
+        while (elapsed > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, elapsed)) {
+            /* retry */
+        }
+    }
+
+    public long getExecutionCount() {
+        return executions.sum();
+    }
+
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    public long getTotalTime(TimeUnit unit) {
+        return unit.convert(totalNanos.sum(), TimeUnit.NANOSECONDS);
+    }
+
+    public long getMeanTime(TimeUnit unit) {
+        long count = executions.sum();
+        return count == 0 ? 0 : unit.convert(totalNanos.sum() / count, TimeUnit.NANOSECONDS);
+    }
+
+    public long getMaxTime(TimeUnit unit) {
+        return unit.convert(maxNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s [executions: %d, failures: %d, mean: %d us, max: %d us]", query,
+                getExecutionCount(), getFailureCount(), getMeanTime(TimeUnit.MICROSECONDS), getMaxTime(TimeUnit.MICROSECONDS));
+    }
+
+    /**
+     * parameters map over the parameter names of the query and the bound values, looked up by a linear scan
+     * as queries have a handful of parameters.
+     */
+    private static class BoundParameters extends AbstractMap<String, Object> {
+        private final String[] names;
+        private final Object[] values;
+
+        BoundParameters(String[] names, Object[] values) {
+            this.names = names;
+            this.values = values;
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < names.length; ++i)
+                if (names[i].equals(key))
+                    return i;
+            return -1;
+        }
+
+        @Override
+        public int size() {
+            return names.length;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return indexOf(key) >= 0;
+        }
+
+        @Override
+        public Object get(Object key) {
+            int index = indexOf(key);
+            return index < 0 ? null : values[index];
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<Entry<String, Object>>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new Iterator<Entry<String, Object>>() {
+                        private int index = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return index < names.length;
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            if (index >= names.length)
+                                throw new NoSuchElementException();
+                            Entry<String, Object> entry = new SimpleImmutableEntry<>(names[index], values[index]);
+                            ++index;
+                            return entry;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return names.length;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package media.dee.dcms.core.db;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs a batch of statements with as few queries as possible.<br/>
+ * statements sharing the same query and parameter names are merged into one query unwinding the parameters of each
+ * statement as a row: <code>UNWIND $__batch AS __row</code>, the parameters are read from the row and the row index is
+ * returned as <code>__idx</code> to route each record back to its statement.<br/>
+ * queries that can't be merged safely, having WITH, ORDER BY, SKIP, LIMIT, UNION, CALL, RETURN * or string literals, run one by one.
+ * so do queries with DISTINCT or aggregate functions: merged, they would aggregate per row instead of per statement and
+ * a statement matching nothing would get no record at all instead of its count of 0 or empty collection.
+ */
+class QueryBatch<R extends Record> {
+    static final String BATCH_PARAMETER = "__batch";
+    static final String INDEX_COLUMN = "__idx";
+
+    private static final Pattern PARAMETER = Pattern.compile("\\$(\\w+)|\\{\\s*(\\w+)\\s*}");
+    private static final Pattern RETURN = Pattern.compile("(?i)\\bRETURN\\s+");
+    private static final Pattern NOT_MERGEABLE = Pattern.compile("(?i)\\b(WITH|ORDER\\s+BY|SKIP|LIMIT|UNION|CALL|DISTINCT)\\b|['\"`]"
+            + "|\\b(count|collect|sum|avg|min|max|stDevP?|percentileCont|percentileDisc)\\s*\\(");
+
+    private final GraphDatabaseService<R> database;
+
+    QueryBatch(GraphDatabaseService<R> database) {
+        this.database = database;
+    }
+
+    /**
+     * rewrite a query to read its parameters from the unwound batch row.
+     * @param query the query to rewrite
+     * @return the merged query or null when the query can't be merged
+     */
+    static String merge(String query) {
+        if (NOT_MERGEABLE.matcher(query).find())
+            return null;
+
+        Matcher returns = RETURN.matcher(query);
+        int returnIndex = -1;
+        int returnEnd = -1;
+        while (returns.find()) {
+            if (returnIndex >= 0)
+                return null;
+            returnIndex = returns.start();
+            returnEnd = returns.end();
+        }
+        // RETURN * can't be preceded by the index column
+        if (returnEnd >= 0 && query.startsWith("*", returnEnd))
+            return null;
+
+        StringBuilder merged = new StringBuilder("UNWIND $").append(BATCH_PARAMETER).append(" AS __row ");
+        Matcher parameters = PARAMETER.matcher(query);
+        int position = 0;
+        while (parameters.find()) {
+            if (returnEnd >= 0 && position <= returnEnd && parameters.start() >= returnEnd) {
+                merged.append(query, position, returnEnd).append("__row.").append(INDEX_COLUMN).append(" AS ").append(INDEX_COLUMN).append(", ");
+                position = returnEnd;
+            }
+            String name = parameters.group(1) != null ? parameters.group(1) : parameters.group(2);
+            merged.append(query, position, parameters.start()).append("__row.").append(name);
+            position = parameters.end();
+        }
+        if (returnEnd >= 0 && position <= returnEnd) {
+            merged.append(query, position, returnEnd).append("__row.").append(INDEX_COLUMN).append(" AS ").append(INDEX_COLUMN).append(", ");
+            position = returnEnd;
+        }
+        merged.append(query, position, query.length());
+        return merged.toString();
+    }
+
+    List<CompletableFuture<List<R>>> run(List<Statement> statements) {
+        List<CompletableFuture<List<R>>> results = new ArrayList<>(statements.size());
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < statements.size(); ++i) {
+            Statement statement = statements.get(i);
+            results.add(new CompletableFuture<>());
+            String shape = statement.getQuery() + '\u0000' + new TreeSet<>(statement.getParameters().keySet());
+            groups.computeIfAbsent(shape, key -> new ArrayList<>()).add(i);
+        }
+
+        for (List<Integer> group : groups.values()) {
+            String merged = group.size() > 1 ? merge(statements.get(group.get(0)).getQuery()) : null;
+            if (merged == null || !runMerged(merged, group, statements, results))
+                for (int index : group)
+                    runOne(statements.get(index), results.get(index));
+        }
+        return results;
+    }
+
+    private void runOne(Statement statement, CompletableFuture<List<R>> result) {
+        try {
+            result.complete(database.run(statement.getQuery(), statement.getParameters()));
+        } catch (RuntimeException ex) {
+            result.completeExceptionally(ex);
+        }
+    }
+
+    /**
+     * @return false when the merged query failed, so the statements should run one by one to isolate the failure.
+     */
+    private boolean runMerged(String query, List<Integer> group, List<Statement> statements, List<CompletableFuture<List<R>>> results) {
+        List<Map<String, Object>> rows = new ArrayList<>(group.size());
+        Map<Integer, List<R>> records = new HashMap<>();
+        for (int index : group) {
+            Map<String, Object> row = new HashMap<>(statements.get(index).getParameters());
+            row.put(INDEX_COLUMN, index);
+            rows.add(row);
+            records.put(index, new ArrayList<>());
+        }
+
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put(BATCH_PARAMETER, rows);
+        try {
+            database.run(query, parameters, record -> {
+                Number index = record.get(INDEX_COLUMN);
+                records.get(index.intValue()).add(record);
+            });
+        } catch (RuntimeException ex) {
+            return false;
+        }
+
+        for (int index : group)
+            results.get(index).complete(records.get(index));
+        return true;
+    }
+}
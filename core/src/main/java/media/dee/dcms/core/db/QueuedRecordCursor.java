@@ -0,0 +1,166 @@
+package media.dee.dcms.core.db;
+
+import java.lang.ref.WeakReference;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Cursor over a consumer based query, the query runs on a producer of the given executor and hands records to the
+ * cursor through a bounded queue, so the producer is blocked whenever the consumer is a fetch size behind.<br/>
+ * closing the cursor makes the producer's consumer throw CancellationException to stop the query. the producer only
+ * holds the cursor weakly, so a cursor dropped without being closed is collected and its query is stopped as well,
+ * until then it holds its producer, cursors not consumed to the end must be closed.
+ */
+class QueuedRecordCursor<R extends Record> implements RecordCursor<R> {
+    private static final Object END = new Object();
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+    /**
+     * error raised by the query, rethrown to the consumer.
+     */
+    private static class Failure {
+        private final Throwable error;
+
+        Failure(Throwable error) {
+            this.error = error;
+        }
+    }
+
+    /**
+     * state shared by the cursor and its producer, which mustn't reference the cursor itself.
+     */
+    private static class Channel {
+        private final BlockingQueue<Object> queue;
+        private final WeakReference<QueuedRecordCursor<?>> cursor;
+        private volatile boolean cancelled = false;
+
+        Channel(int fetchSize, QueuedRecordCursor<?> cursor) {
+            this.queue = new ArrayBlockingQueue<>(fetchSize);
+            this.cursor = new WeakReference<>(cursor);
+        }
+
+        /**
+         * hand an item to the cursor, waiting while the queue is full.
+         * @throws CancellationException when the cursor is closed or collected
+         */
+        void put(Object item) {
+            try {
+                while (!cancelled && cursor.get() != null) {
+                    if (queue.offer(item, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS))
+                        return;
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            throw new CancellationException();
+        }
+    }
+
+    private final int fetchSize;
+    private final Channel channel;
+    private boolean finished = false;
+    private Object next;
+
+    /**
+     * @param query runs the query passing each record to the given consumer
+     * @param fetchSize maximum number of records fetched ahead of the consumer
+     * @param producers executor running the query, a rejected query fails the cursor
+     */
+    QueuedRecordCursor(Consumer<Consumer<R>> query, int fetchSize, Executor producers) {
+        if (fetchSize < 1)
+            throw new IllegalArgumentException(String.format("Invalid fetch size: %d", fetchSize));
+        this.fetchSize = fetchSize;
+        this.channel = new Channel(fetchSize, this);
+        Channel producer = channel;
+        Runnable task = () -> {
+            // closed while waiting for a producer
+            if (producer.cancelled || producer.cursor.get() == null)
+                return;
+            try {
+                query.accept(producer::put);
+                producer.put(END);
+            } catch (CancellationException ex) {
+                /* closed by the consumer */
+            } catch (Throwable ex) {
+                try {
+                    producer.put(new Failure(ex));
+                } catch (CancellationException cancelled) {
+                    /* closed by the consumer */
+                }
+            }
+        };
+        try {
+            producers.execute(task);
+        } catch (RejectedExecutionException ex) {
+            channel.queue.add(new Failure(ex));
+        }
+    }
+
+    @Override
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null)
+            return true;
+        if (finished || channel.cancelled)
+            return false;
+
+        try {
+            next = channel.queue.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            close();
+            return false;
+        }
+
+        if (next == END) {
+            next = null;
+            finished = true;
+            return false;
+        }
+        if (next instanceof Failure) {
+            Throwable error = ((Failure) next).error;
+            next = null;
+            finished = true;
+            if (error instanceof Error)
+                throw (Error) error;
+            if (error instanceof RuntimeException)
+                throw (RuntimeException) error;
+            throw new IllegalStateException("Query failed", error);
+        }
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public R next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        R record = (R) next;
+        next = null;
+        return record;
+    }
+
+    @Override
+    public void close() {
+        if (finished)
+            return;
+        channel.cancelled = true;
+        next = null;
+        channel.queue.clear();
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return channel.cancelled;
+    }
+}
@@ -0,0 +1,44 @@
+package media.dee.dcms.core.db;
+
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Forward only cursor over the records of a query.<br/>
+ * records are fetched from the database in batches of the cursor fetch size as they are consumed, so the memory
+ * held by the cursor is bounded by the fetch size regardless of the result size.
+ * the cursor must be closed when it's not consumed to the end, closing the cursor cancels the query.
+ */
+public interface RecordCursor<R extends Record> extends Iterator<R>, AutoCloseable {
+
+    /**
+     * @return maximum number of records fetched ahead of the consumer.
+     */
+    int getFetchSize();
+
+    /**
+     * cancel the query and release the fetched records, the cursor has no more records after closing.
+     */
+    @Override
+    void close();
+
+    /**
+     * @return whether the cursor is closed before consuming all records.
+     */
+    boolean isCancelled();
+
+    default Spliterator<R> spliterator() {
+        return Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    /**
+     * sequential stream over the cursor records, closing the stream closes the cursor.
+     * @return stream of records
+     */
+    default Stream<R> stream() {
+        return StreamSupport.stream(spliterator(), false).onClose(this::close);
+    }
+}
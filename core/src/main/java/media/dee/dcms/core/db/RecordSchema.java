@@ -0,0 +1,74 @@
+package media.dee.dcms.core.db;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Keys of the records of a query, shared by all its records, so a {@link CompactRecord} holds only its values.<br/>
+ * nested values ( maps, lists or driver values ) are converted by the schema converter on their first access.
+ */
+public final class RecordSchema {
+    private final String[] keys;
+    private final Map<String, Integer> indexes;
+    private final Function<Object, Object> nestedConverter;
+
+    private RecordSchema(String[] keys, Function<Object, Object> nestedConverter) {
+        this.keys = keys;
+        this.nestedConverter = nestedConverter;
+        this.indexes = new HashMap<>(keys.length * 2);
+        for (int i = 0; i < keys.length; ++i)
+            if (indexes.put(keys[i], i) != null)
+                throw new IllegalArgumentException(String.format("Duplicate record key: %s", keys[i]));
+    }
+
+    public static RecordSchema of(String... keys) {
+        return new RecordSchema(keys.clone(), Function.identity());
+    }
+
+    public static RecordSchema of(List<String> keys) {
+        return new RecordSchema(keys.toArray(new String[keys.size()]), Function.identity());
+    }
+
+    /**
+     * @param nestedConverter converts nested values set by {@link CompactRecord.Builder#setNested(int, Object)} on first access
+     * @return schema with the same keys using the given converter
+     */
+    public RecordSchema withNestedConverter(Function<Object, Object> nestedConverter) {
+        return new RecordSchema(keys, nestedConverter);
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    public String getKey(int index) {
+        return keys[index];
+    }
+
+    public List<String> getKeys() {
+        return Collections.unmodifiableList(Arrays.asList(keys));
+    }
+
+    /**
+     * @return index of the key or -1 when the key isn't a part of the schema.
+     */
+    public int indexOf(Object key) {
+        Integer index = indexes.get(key);
+        return index == null ? -1 : index;
+    }
+
+    Object convertNested(Object value) {
+        return nestedConverter.apply(value);
+    }
+
+    /**
+     * @return builder of a record of this schema
+     */
+    public CompactRecord.Builder record() {
+        return new CompactRecord.Builder(this);
+    }
+}
@@ -0,0 +1,35 @@
+package media.dee.dcms.core.db;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Query along with its parameters, submitted as a part of a batch.
+ */
+public final class Statement {
+    private final String query;
+    private final Map<String, Object> parameters;
+
+    public Statement(String query, Map<String, Object> parameters) {
+        this.query = Objects.requireNonNull(query, "query");
+        this.parameters = parameters == null ? Collections.emptyMap() : parameters;
+    }
+
+    public static Statement of(String query, Map<String, Object> parameters) {
+        return new Statement(query, parameters);
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public Map<String, Object> getParameters() {
+        return parameters;
+    }
+
+    @Override
+    public String toString() {
+        return query;
+    }
+}
@@ -0,0 +1,126 @@
+package media.dee.dcms.core.http;
+
+import media.dee.dcms.core.db.GraphDatabaseService;
+import media.dee.dcms.core.layout.RenderInvalidator;
+import media.dee.dcms.core.publish.PageRenderer;
+import media.dee.dcms.core.services.RenderService;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.http.HttpService;
+import org.osgi.service.log.LogService;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * Serves rendered pages at {pages.alias} through the {@link PageCacheFilter}.<br/>
+ * HttpService registers servlets only, so the filter is registered in front of the {@link PageServlet} as one servlet.
+ * node changes are propagated to the page caches of the cluster by the {@link RenderInvalidator}.<br/>
+ * configuration: <code>pages.alias</code> (default /pages), <code>pages.cache.softTtl</code> and
+ * <code>pages.cache.hardTtl</code> in seconds (default 60 and 3600), <code>pages.cache.wait</code> maximum seconds
+ * a request waits for a coalesced render (default 30), <code>pages.cache.size</code> maximum bytes cached (default 64 MB),
+ * <code>pages.themes</code> comma separated themes cached as separate variants (default none).
+ */
+@Component(immediate = true, service = PageCache.class)
+public class CachingPageServer implements PageCache {
+    private static final long DEFAULT_SIZE = 64L * 1024 * 1024;
+
+    private GraphDatabaseService<?> database;
+    private RenderService renderService;
+    private HttpService httpService;
+    private LogService log;
+    private PageCacheFilter filter;
+    private RenderInvalidator invalidator;
+    private LongConsumer invalidationListener;
+    private String alias;
+
+    @Reference
+    void setGraphDatabaseService(GraphDatabaseService<?> database) {
+        this.database = database;
+    }
+
+    @Reference
+    void setRenderService(RenderService renderService) {
+        this.renderService = renderService;
+    }
+
+    @Reference
+    void setHttpService(HttpService httpService) {
+        this.httpService = httpService;
+    }
+
+    @Reference
+    void setRenderInvalidator(RenderInvalidator invalidator) {
+        this.invalidator = invalidator;
+    }
+
+    @Reference
+    void setLogService(LogService log) {
+        this.log = log;
+    }
+
+    private static long getLong(Map<String, Object> properties, String key, long defaultValue) {
+        Object value = properties.get(key);
+        return value == null ? defaultValue : Long.parseLong(value.toString());
+    }
+
+    @Activate
+    void activate(Map<String, Object> properties) {
+        Object configuredAlias = properties.get("pages.alias");
+        alias = configuredAlias == null ? "/pages" : configuredAlias.toString();
+        long softTtl = getLong(properties, "pages.cache.softTtl", 60);
+        long hardTtl = getLong(properties, "pages.cache.hardTtl", 3600);
+        long wait = getLong(properties, "pages.cache.wait", 30);
+        long size = getLong(properties, "pages.cache.size", DEFAULT_SIZE);
+        Set<String> themes = new LinkedHashSet<>();
+        Object configuredThemes = properties.get("pages.themes");
+        if (configuredThemes != null)
+            for (String theme : configuredThemes.toString().split("\\s*,\\s*"))
+                if (!theme.isEmpty())
+                    themes.add(theme);
+
+        filter = new PageCacheFilter(softTtl, hardTtl, wait, TimeUnit.SECONDS, size, themes);
+        invalidationListener = filter::invalidateNode;
+        invalidator.addListener(invalidationListener);
+
+        try {
+            httpService.registerServlet(alias, new FilteredServlet(filter, new PageServlet(database, PageRenderer.of(renderService))), null, null);
+        } catch (Exception ex) {
+            log.log(LogService.LOG_ERROR, String.format("Error while registering cached pages: %s", alias), ex);
+        }
+        log.log(LogService.LOG_INFO, String.format("Page cache activated at %s, soft ttl: %d s, hard ttl: %d s, size: %d bytes, cluster: %b",
+                alias, softTtl, hardTtl, size, invalidator.isClustered()));
+    }
+
+    @Deactivate
+    void deactivate() {
+        try {
+            httpService.unregister(alias);
+        } catch (Exception ex) {
+            log.log(LogService.LOG_ERROR, String.format("Error while un-registering cached pages: %s", alias), ex);
+        }
+        invalidator.removeListener(invalidationListener);
+        log.log(LogService.LOG_INFO, String.format("Page cache deactivated [%s]", filter));
+        filter.invalidateAll();
+    }
+
+    @Override
+    public void nodeChanged(long nodeId) {
+        invalidator.nodeChanged(nodeId);
+    }
+
+    @Override
+    public void invalidateAll() {
+        filter.invalidateAll();
+    }
+
+    @Override
+    public PageCacheFilter getFilter() {
+        return filter;
+    }
+}
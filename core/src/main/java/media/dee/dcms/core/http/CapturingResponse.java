@@ -0,0 +1,277 @@
+package media.dee.dcms.core.http;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Response buffering the body written by the servlet, so it can be cached before it's sent.<br/>
+ * headers other than the content type and length go to the wrapped response and are captured to be sent along with
+ * the cached body. a response setting a cookie or disallowing shared caching, error and redirect responses aren't cacheable.
+ */
+class CapturingResponse extends HttpServletResponseWrapper {
+    /**
+     * headers set by the cache itself or describing the connection rather than the content.
+     */
+    private static final Set<String> UNCACHED_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        UNCACHED_HEADERS.addAll(Arrays.asList("Content-Length", "Content-Type", "ETag", "Age", "X-Cache", "Set-Cookie",
+                "Date", "Connection", "Transfer-Encoding"));
+    }
+
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream(8192);
+    private final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private int status = SC_OK;
+    private boolean cacheable = true;
+    private boolean sent;
+    private String contentType;
+    private ServletOutputStream outputStream;
+    private PrintWriter writer;
+
+    CapturingResponse(HttpServletResponse response) {
+        super(response);
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+        if (writer != null)
+            throw new IllegalStateException("getWriter() has already been called");
+        if (outputStream == null)
+            outputStream = new ServletOutputStream() {
+                @Override
+                public void write(int b) {
+                    body.write(b);
+                }
+
+                @Override
+                public void write(byte[] bytes, int offset, int length) {
+                    body.write(bytes, offset, length);
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setWriteListener(WriteListener listener) {
+                    throw new UnsupportedOperationException("Captured responses are written synchronously");
+                }
+            };
+        return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() {
+        if (outputStream != null)
+            throw new IllegalStateException("getOutputStream() has already been called");
+        if (writer == null) {
+            String encoding = getCharacterEncoding();
+            Charset charset = encoding == null ? StandardCharsets.ISO_8859_1 : Charset.forName(encoding);
+            writer = new PrintWriter(new OutputStreamWriter(body, charset));
+        }
+        return writer;
+    }
+
+    @Override
+    public void setContentType(String type) {
+        contentType = type;
+        super.setContentType(type);
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public void setContentLength(int length) {
+        /* set when the captured body is sent */
+    }
+
+    @Override
+    public void setContentLengthLong(long length) {
+        /* set when the captured body is sent */
+    }
+
+    @Override
+    public void setStatus(int status) {
+        this.status = status;
+        if (status != SC_OK)
+            cacheable = false;
+        super.setStatus(status);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void setStatus(int status, String message) {
+        this.status = status;
+        if (status != SC_OK)
+            cacheable = false;
+        super.setStatus(status, message);
+    }
+
+    @Override
+    public int getStatus() {
+        return status;
+    }
+
+    @Override
+    public void sendError(int status) throws IOException {
+        sendError(status, null);
+    }
+
+    @Override
+    public void sendError(int status, String message) throws IOException {
+        this.status = status;
+        cacheable = false;
+        sent = true;
+        body.reset();
+        super.sendError(status, message);
+    }
+
+    @Override
+    public void sendRedirect(String location) throws IOException {
+        status = SC_FOUND;
+        cacheable = false;
+        sent = true;
+        body.reset();
+        super.sendRedirect(location);
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        checkHeader(name, value);
+        captureHeader(name, value, true);
+        super.setHeader(name, value);
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        checkHeader(name, value);
+        captureHeader(name, value, false);
+        super.addHeader(name, value);
+    }
+
+    @Override
+    public void setDateHeader(String name, long date) {
+        captureHeader(name, formatDate(date), true);
+        super.setDateHeader(name, date);
+    }
+
+    @Override
+    public void addDateHeader(String name, long date) {
+        captureHeader(name, formatDate(date), false);
+        super.addDateHeader(name, date);
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+        captureHeader(name, String.valueOf(value), true);
+        super.setIntHeader(name, value);
+    }
+
+    @Override
+    public void addIntHeader(String name, int value) {
+        captureHeader(name, String.valueOf(value), false);
+        super.addIntHeader(name, value);
+    }
+
+    private static String formatDate(long date) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(date).atZone(ZoneOffset.UTC));
+    }
+
+    private void captureHeader(String name, String value, boolean replace) {
+        if (name == null || UNCACHED_HEADERS.contains(name))
+            return;
+        if (value == null) {
+            if (replace)
+                headers.remove(name);
+            return;
+        }
+        List<String> values = replace ? null : headers.get(name);
+        if (values == null) {
+            values = new ArrayList<>(1);
+            headers.put(name, values);
+        }
+        values.add(value);
+    }
+
+    private void checkHeader(String name, String value) {
+        if ("Set-Cookie".equalsIgnoreCase(name))
+            cacheable = false;
+        else if ("Cache-Control".equalsIgnoreCase(name) && value != null
+                && (value.contains("no-store") || value.contains("private") || value.contains("no-cache")))
+            cacheable = false;
+    }
+
+    @Override
+    public boolean isCommitted() {
+        return sent;
+    }
+
+    @Override
+    public void flushBuffer() {
+        if (writer != null)
+            writer.flush();
+    }
+
+    @Override
+    public void resetBuffer() {
+        if (writer != null)
+            writer.flush();
+        body.reset();
+    }
+
+    @Override
+    public void reset() {
+        resetBuffer();
+        status = SC_OK;
+        cacheable = true;
+        headers.clear();
+        super.reset();
+    }
+
+    boolean isCacheable() {
+        return cacheable && !sent;
+    }
+
+    /**
+     * @return whether an error or a redirect is already sent by the wrapped response.
+     */
+    boolean isSent() {
+        return sent;
+    }
+
+    /**
+     * @return the captured headers, by name.
+     */
+    Map<String, List<String>> getHeaders() {
+        return Collections.unmodifiableMap(headers);
+    }
+
+    byte[] getBody() {
+        if (writer != null)
+            writer.flush();
+        return body.toByteArray();
+    }
+}
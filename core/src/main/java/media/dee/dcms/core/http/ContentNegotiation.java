@@ -0,0 +1,54 @@
+package media.dee.dcms.core.http;
+
+/**
+ * Request header parsing shared by the servlets serving pre-compressed content.
+ */
+public final class ContentNegotiation {
+
+    private ContentNegotiation() {
+    }
+
+    /**
+     * @param acceptEncoding Accept-Encoding header of the request, may be null
+     * @return whether gzip is accepted with a non-zero quality
+     */
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null)
+            return false;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (!parts[0].trim().equalsIgnoreCase("gzip"))
+                continue;
+            for (int i = 1; i < parts.length; ++i) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(parameter.substring(2)) > 0;
+                    } catch (NumberFormatException ex) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param ifNoneMatch If-None-Match header of the request, may be null
+     * @param eTag current entity tag
+     * @return whether the client has the current entity
+     */
+    public static boolean matches(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null)
+            return false;
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/"))
+                candidate = candidate.substring(2);
+            if (candidate.equals("*") || candidate.equals(eTag))
+                return true;
+        }
+        return false;
+    }
+}
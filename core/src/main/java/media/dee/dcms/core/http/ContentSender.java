@@ -0,0 +1,91 @@
+package media.dee.dcms.core.http;
+
+import media.dee.dcms.core.io.BufferPool;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes buffers to a servlet output without copying them to the heap when the container supports it.<br/>
+ * Jetty's HttpOutput.sendContent(ByteBuffer) writes a direct or mapped buffer to the connection as is,
+ * it's looked up reflectively to avoid binding bundles to Jetty's server packages.
+ */
+public final class ContentSender {
+    private static final Map<Class<?>, Optional<Method>> sendContentMethods = new ConcurrentHashMap<>();
+
+    private ContentSender() {
+    }
+
+    /**
+     * write a range of a file to the output stream through a pooled direct buffer, the file is read without the
+     * intermediate copy made for heap buffers. the chunks are written to the stream, as sendContent completes the response.
+     * @param os servlet output stream
+     * @param channel file to read
+     * @param position offset of the first byte to write
+     * @param count number of bytes to write
+     */
+    public static void send(OutputStream os, FileChannel channel, long position, long count) throws IOException {
+        BufferPool pool = BufferPool.direct();
+        ByteBuffer buffer = pool.acquire(BufferPool.MAX_SIZE);
+        WritableByteChannel target = Channels.newChannel(os);
+        try {
+            long end = position + count;
+            while (position < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), end - position));
+                int read = channel.read(buffer, position);
+                if (read < 0)
+                    throw new EOFException(String.format("File ended %d bytes before the requested range", end - position));
+                buffer.flip();
+                while (buffer.hasRemaining())
+                    target.write(buffer);
+                position += read;
+            }
+        } finally {
+            pool.release(buffer);
+        }
+    }
+
+    /**
+     * write the remaining content of a buffer to the output stream as the whole response content, Jetty completes
+     * the response once it's sent, so it's called once per response.
+     * @param os servlet output stream
+     * @param content buffer to write, its position is not preserved
+     */
+    public static void send(OutputStream os, ByteBuffer content) throws IOException {
+        Optional<Method> sendContent = sendContentMethods.computeIfAbsent(os.getClass(), type -> {
+            try {
+                return Optional.of(type.getMethod("sendContent", ByteBuffer.class));
+            } catch (NoSuchMethodException ex) {
+                return Optional.empty();
+            }
+        });
+
+        if (sendContent.isPresent()) {
+            try {
+                sendContent.get().invoke(os, content);
+                return;
+            } catch (IllegalAccessException ex) {
+                /* fallback to channel copy */
+            } catch (InvocationTargetException ex) {
+                if (ex.getCause() instanceof IOException)
+                    throw (IOException) ex.getCause();
+                throw new IOException(ex.getCause());
+            }
+        }
+
+        WritableByteChannel channel = Channels.newChannel(os);
+        while (content.hasRemaining())
+            channel.write(content);
+    }
+}
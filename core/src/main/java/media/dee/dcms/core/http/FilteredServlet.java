@@ -0,0 +1,40 @@
+package media.dee.dcms.core.http;
+
+import javax.servlet.Filter;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServlet;
+import java.io.IOException;
+
+/**
+ * Servlet passing each request through a filter before the target servlet, as HttpService registers servlets only.<br/>
+ * the filter is expected to be configured when it's created, its init isn't called.
+ */
+class FilteredServlet extends HttpServlet {
+    private final Filter filter;
+    private final HttpServlet servlet;
+
+    FilteredServlet(Filter filter, HttpServlet servlet) {
+        this.filter = filter;
+        this.servlet = servlet;
+    }
+
+    @Override
+    public void init(ServletConfig config) throws ServletException {
+        super.init(config);
+        servlet.init(config);
+    }
+
+    @Override
+    public void service(ServletRequest req, ServletResponse resp) throws ServletException, IOException {
+        filter.doFilter(req, resp, servlet::service);
+    }
+
+    @Override
+    public void destroy() {
+        servlet.destroy();
+        filter.destroy();
+    }
+}
@@ -0,0 +1,23 @@
+package media.dee.dcms.core.http;
+
+/**
+ * Cache of rendered pages served over HTTP.
+ */
+public interface PageCache {
+
+    /**
+     * mark the pages rendered from a node stale on all nodes of the cluster.
+     * @param nodeId id of the changed node
+     */
+    void nodeChanged(long nodeId);
+
+    /**
+     * remove all cached pages of this node.
+     */
+    void invalidateAll();
+
+    /**
+     * @return the filter caching the pages, exposing the hit, miss and coalesced request counters.
+     */
+    PageCacheFilter getFilter();
+}
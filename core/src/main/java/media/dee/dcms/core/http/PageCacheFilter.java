@@ -0,0 +1,460 @@
+package media.dee.dcms.core.http;
+
+import media.dee.dcms.core.cache.DependencyIndex;
+import media.dee.dcms.core.cache.LongHashSet;
+import media.dee.dcms.core.layout.RenderDependencies;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * Caches rendered pages in front of the page servlet, keyed by {@link PageVariant}.<br/>
+ * only one request renders a missing page, concurrent requests of the same variant wait for it and share the result.
+ * a page older than the soft ttl is stale: the first request revalidates it while the other requests are served the
+ * stale page at once, a page older than the hard ttl isn't served anymore.<br/>
+ * the nodes read while a page renders are recorded, a change of one of them marks the pages depending on it stale.
+ * GET requests without query parameters other than <code>format</code> and <code>theme</code>, and without
+ * an Authorization header are cached, other requests pass through.<br/>
+ * a theme, from the <code>theme</code> parameter or the theme cookie, is part of the key only when it's one of the
+ * configured themes, other values are cached as the default theme so they can't fill the cache with copies of a page.
+ * responses vary on Cookie only when a theme may come from the cookie.
+ */
+public class PageCacheFilter implements Filter {
+    /**
+     * request attribute holding the {@link PageVariant} the request is rendered for.
+     */
+    public static final String VARIANT_ATTRIBUTE = "dcms.page.variant";
+    public static final String THEME_COOKIE = "dcms-theme";
+    private static final String DEFAULT_FORMAT = "html";
+
+    /**
+     * a cached page, immutable except for being marked stale by a node change.
+     */
+    private static class CachedPage {
+        private final byte[] body;
+        private final String contentType;
+        private final Map<String, List<String>> headers;
+        private final String eTag;
+        private final long created;
+        private final long softExpiry;
+        private final long hardExpiry;
+        private volatile boolean invalidated;
+
+        CachedPage(byte[] body, String contentType, Map<String, List<String>> headers, long created, long softTtl, long hardTtl) {
+            this.body = body;
+            this.contentType = contentType;
+            this.headers = headers;
+            this.created = created;
+            this.softExpiry = created + softTtl;
+            this.hardExpiry = created + hardTtl;
+            CRC32 crc = new CRC32();
+            crc.update(body, 0, body.length);
+            this.eTag = String.format("\"%x-%x\"", crc.getValue(), body.length);
+        }
+
+        boolean isFresh(long now) {
+            return !invalidated && now - softExpiry < 0;
+        }
+
+        boolean isExpired(long now) {
+            return now - hardExpiry >= 0;
+        }
+    }
+
+    private final long softTtl;
+    private final long hardTtl;
+    private final long waitTimeout;
+    private final long maxBytes;
+    private final Set<String> themes;
+    private final LinkedHashMap<PageVariant, CachedPage> pages = new LinkedHashMap<>(64, 0.75f, true);
+    private final DependencyIndex<PageVariant> dependencies = new DependencyIndex<>();
+    private final ConcurrentMap<PageVariant, CompletableFuture<CachedPage>> inFlight = new ConcurrentHashMap<>();
+    private long usedBytes;
+    private long invalidations;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder bypassed = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param softTtl age after which a page is revalidated while it's still served
+     * @param hardTtl age after which a page isn't served anymore, not less than the soft ttl
+     * @param waitTimeout maximum time a request waits for the render of another request before rendering by itself
+     * @param unit unit of the ttls and the timeout
+     * @param maxBytes maximum total size of the cached pages
+     */
+    public PageCacheFilter(long softTtl, long hardTtl, long waitTimeout, TimeUnit unit, long maxBytes) {
+        this(softTtl, hardTtl, waitTimeout, unit, maxBytes, Collections.emptySet());
+    }
+
+    /**
+     * @param softTtl age after which a page is revalidated while it's still served
+     * @param hardTtl age after which a page isn't served anymore, not less than the soft ttl
+     * @param waitTimeout maximum time a request waits for the render of another request before rendering by itself
+     * @param unit unit of the ttls and the timeout
+     * @param maxBytes maximum total size of the cached pages
+     * @param themes themes pages are rendered with, cached as separate variants
+     */
+    public PageCacheFilter(long softTtl, long hardTtl, long waitTimeout, TimeUnit unit, long maxBytes, Set<String> themes) {
+        if (hardTtl < softTtl)
+            throw new IllegalArgumentException("hard ttl is less than soft ttl");
+        this.softTtl = unit.toNanos(softTtl);
+        this.hardTtl = unit.toNanos(hardTtl);
+        this.waitTimeout = unit.toNanos(waitTimeout);
+        this.maxBytes = maxBytes;
+        this.themes = Collections.unmodifiableSet(new HashSet<>(themes));
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+    }
+
+    @Override
+    public void destroy() {
+        invalidateAll();
+    }
+
+    /**
+     * @return the variant to cache the response of the request by, null when the request shouldn't be cached.
+     */
+    protected PageVariant variantOf(HttpServletRequest request) {
+        if (!"GET".equals(request.getMethod()) || request.getHeader("Authorization") != null)
+            return null;
+
+        String format = DEFAULT_FORMAT;
+        String theme = null;
+        String query = request.getQueryString();
+        if (query != null && !query.isEmpty()) {
+            for (String parameter : query.split("&")) {
+                int equals = parameter.indexOf('=');
+                String name = equals < 0 ? parameter : parameter.substring(0, equals);
+                if (name.isEmpty())
+                    continue;
+                if (name.equals("format"))
+                    format = request.getParameter("format");
+                else if (name.equals("theme"))
+                    theme = request.getParameter("theme");
+                else
+                    return null;
+            }
+        }
+        if (theme == null)
+            theme = getCookie(request, THEME_COOKIE);
+
+        if (theme != null && !themes.contains(theme))
+            theme = null;
+
+        String site = request.getServerName();
+        return new PageVariant(site == null ? "" : site, request.getRequestURI(),
+                format == null || format.isEmpty() ? DEFAULT_FORMAT : format, theme == null ? "" : theme);
+    }
+
+    /**
+     * @return whether the variant of a request may depend on its theme cookie.
+     */
+    private boolean variesOnCookie(HttpServletRequest request) {
+        return !themes.isEmpty() && request.getParameter("theme") == null;
+    }
+
+    private static String getCookie(HttpServletRequest request, String name) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null)
+            return null;
+        for (Cookie cookie : cookies)
+            if (name.equals(cookie.getName()))
+                return cookie.getValue();
+        return null;
+    }
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse resp, FilterChain chain) throws IOException, ServletException {
+        if (!(req instanceof HttpServletRequest) || !(resp instanceof HttpServletResponse)) {
+            chain.doFilter(req, resp);
+            return;
+        }
+        HttpServletRequest request = (HttpServletRequest) req;
+        HttpServletResponse response = (HttpServletResponse) resp;
+        PageVariant variant = variantOf(request);
+        if (variant == null) {
+            bypassed.increment();
+            chain.doFilter(request, response);
+            return;
+        }
+        request.setAttribute(VARIANT_ATTRIBUTE, variant);
+
+        long now = System.nanoTime();
+        CachedPage page = lookup(variant, now);
+        CompletableFuture<CachedPage> created = new CompletableFuture<>();
+        if (page != null) {
+            if (page.isFresh(now)) {
+                hits.increment();
+                send(request, response, page, "HIT");
+                return;
+            }
+            if (inFlight.putIfAbsent(variant, created) != null) {
+                staleHits.increment();
+                send(request, response, page, "STALE");
+                return;
+            }
+            revalidations.increment();
+            render(variant, request, response, chain, created, "REVALIDATED");
+            return;
+        }
+
+        CompletableFuture<CachedPage> running = inFlight.putIfAbsent(variant, created);
+        if (running != null) {
+            coalesced.increment();
+            CachedPage shared = await(running);
+            if (shared != null)
+                send(request, response, shared, "COALESCED");
+            else
+                // the shared response isn't cacheable or failed
+                chain.doFilter(request, response);
+            return;
+        }
+        misses.increment();
+        render(variant, request, response, chain, created, "MISS");
+    }
+
+    private void render(PageVariant variant, HttpServletRequest request, HttpServletResponse response, FilterChain chain,
+                        CompletableFuture<CachedPage> created, String cacheStatus) throws IOException, ServletException {
+        long generation;
+        synchronized (this) {
+            generation = invalidations;
+        }
+
+        CapturingResponse capture = new CapturingResponse(response);
+        CachedPage page = null;
+        try {
+            LongHashSet nodes;
+            try (RenderDependencies.Recording recording = RenderDependencies.start()) {
+                chain.doFilter(request, capture);
+                nodes = recording.getNodes();
+            }
+            if (capture.isCacheable()) {
+                page = new CachedPage(capture.getBody(), capture.getContentType(), copyOf(capture.getHeaders()), System.nanoTime(), softTtl, hardTtl);
+                store(variant, page, nodes, generation);
+            }
+        } finally {
+            inFlight.remove(variant, created);
+            created.complete(page);
+        }
+
+        if (page != null) {
+            // the captured headers are already set on this response
+            send(request, response, page, cacheStatus, false);
+        } else if (!capture.isSent()) {
+            byte[] body = capture.getBody();
+            response.setContentLength(body.length);
+            OutputStream os = response.getOutputStream();
+            os.write(body);
+            os.flush();
+        }
+    }
+
+    private CachedPage await(CompletableFuture<CachedPage> running) {
+        try {
+            return running.get(waitTimeout, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | TimeoutException ex) {
+            return null;
+        }
+    }
+
+    private static Map<String, List<String>> copyOf(Map<String, List<String>> headers) {
+        if (headers.isEmpty())
+            return Collections.emptyMap();
+        Map<String, List<String>> copy = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> header : headers.entrySet())
+            copy.put(header.getKey(), new ArrayList<>(header.getValue()));
+        return copy;
+    }
+
+    private void send(HttpServletRequest request, HttpServletResponse response, CachedPage page, String cacheStatus) throws IOException {
+        send(request, response, page, cacheStatus, true);
+    }
+
+    private void send(HttpServletRequest request, HttpServletResponse response, CachedPage page, String cacheStatus,
+                      boolean withHeaders) throws IOException {
+        if (withHeaders) {
+            for (Map.Entry<String, List<String>> header : page.headers.entrySet()) {
+                List<String> values = header.getValue();
+                response.setHeader(header.getKey(), values.get(0));
+                for (int i = 1; i < values.size(); ++i)
+                    response.addHeader(header.getKey(), values.get(i));
+            }
+        }
+        response.setHeader("X-Cache", cacheStatus);
+        response.setHeader("ETag", page.eTag);
+        response.setHeader("Age", String.valueOf(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - page.created)));
+        if (variesOnCookie(request))
+            response.setHeader("Vary", "Cookie");
+        if (ContentNegotiation.matches(request.getHeader("If-None-Match"), page.eTag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        if (page.contentType != null)
+            response.setContentType(page.contentType);
+        response.setContentLength(page.body.length);
+        OutputStream os = response.getOutputStream();
+        os.write(page.body);
+        os.flush();
+    }
+
+    private synchronized CachedPage lookup(PageVariant variant, long now) {
+        CachedPage page = pages.get(variant);
+        if (page != null && page.isExpired(now)) {
+            remove(variant);
+            return null;
+        }
+        return page;
+    }
+
+    private synchronized void store(PageVariant variant, CachedPage page, LongHashSet nodes, long generation) {
+        if (page.body.length > maxBytes)
+            return;
+        // a page rendered while nodes changed may be out of date
+        if (generation != invalidations)
+            page.invalidated = true;
+        remove(variant);
+        pages.put(variant, page);
+        usedBytes += page.body.length;
+        dependencies.put(variant, nodes);
+
+        Iterator<Map.Entry<PageVariant, CachedPage>> eldest = pages.entrySet().iterator();
+        while (usedBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<PageVariant, CachedPage> entry = eldest.next();
+            usedBytes -= entry.getValue().body.length;
+            dependencies.remove(entry.getKey());
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    private void remove(PageVariant variant) {
+        CachedPage page = pages.remove(variant);
+        if (page == null)
+            return;
+        usedBytes -= page.body.length;
+        dependencies.remove(variant);
+    }
+
+    /**
+     * mark the pages rendered from a node stale, they are revalidated by the next request.
+     * @param nodeId id of the changed node
+     */
+    public synchronized void invalidateNode(long nodeId) {
+        ++invalidations;
+        for (PageVariant variant : dependencies.getKeys(nodeId)) {
+            CachedPage page = pages.get(variant);
+            if (page != null)
+                page.invalidated = true;
+        }
+    }
+
+    /**
+     * remove a cached page.
+     */
+    public synchronized void invalidate(PageVariant variant) {
+        ++invalidations;
+        remove(variant);
+    }
+
+    public synchronized void invalidateAll() {
+        ++invalidations;
+        pages.clear();
+        dependencies.clear();
+        usedBytes = 0;
+    }
+
+    public synchronized int size() {
+        return pages.size();
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * @return number of requests served a fresh page.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return number of requests served a stale page while another request revalidated it.
+     */
+    public long getStaleHits() {
+        return staleHits.sum();
+    }
+
+    /**
+     * @return number of requests rendering a missing page.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return number of requests waiting for the render of another request.
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * @return number of requests re-rendering a stale page.
+     */
+    public long getRevalidations() {
+        return revalidations.sum();
+    }
+
+    /**
+     * @return number of requests passed through without caching.
+     */
+    public long getBypassed() {
+        return bypassed.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PageCache{hits=%d, stale=%d, misses=%d, coalesced=%d, revalidations=%d, bypassed=%d, evictions=%d, size=%d, bytes=%d}",
+                getHits(), getStaleHits(), getMisses(), getCoalesced(), getRevalidations(), getBypassed(), getEvictions(), size(), getUsedBytes());
+    }
+}
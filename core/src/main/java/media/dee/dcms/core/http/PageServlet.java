@@ -0,0 +1,84 @@
+package media.dee.dcms.core.http;
+
+import media.dee.dcms.core.db.GraphDatabaseService;
+import media.dee.dcms.core.db.GraphDatabaseService.GraphNode;
+import media.dee.dcms.core.db.NoSuchRecordException;
+import media.dee.dcms.core.db.PreparedQuery;
+import media.dee.dcms.core.db.Record;
+import media.dee.dcms.core.layout.RenderDependencies;
+import media.dee.dcms.core.layout.RenderException;
+import media.dee.dcms.core.publish.PageRenderer;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Renders the page at the request path on each request, meant to be served behind the {@link PageCacheFilter}.<br/>
+ * the format is taken from the {@link PageVariant} of the request, or the format parameter when it isn't cached.
+ */
+public class PageServlet extends HttpServlet {
+    private static final PreparedQuery PAGE_BY_PATH = PreparedQuery.prepare("MATCH (page:Page) WHERE page.path = $path RETURN page");
+
+    private final GraphDatabaseService<? extends Record> database;
+    private final PageRenderer renderer;
+
+    public PageServlet(GraphDatabaseService<? extends Record> database, PageRenderer renderer) {
+        this.database = database;
+        this.renderer = renderer;
+    }
+
+    private static String contentType(String format) {
+        switch (format) {
+            case "html":
+                return "text/html;charset=UTF-8";
+            case "json":
+                return "application/json;charset=UTF-8";
+            case "xml":
+                return "application/xml;charset=UTF-8";
+            default:
+                return "text/plain;charset=UTF-8";
+        }
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        String path = req.getPathInfo() == null ? "/" : req.getPathInfo();
+        Object variant = req.getAttribute(PageCacheFilter.VARIANT_ATTRIBUTE);
+        String format = variant instanceof PageVariant ? ((PageVariant) variant).getFormat() : req.getParameter("format");
+        if (format == null || format.isEmpty())
+            format = PageRenderer.DEFAULT_FORMAT;
+        if (!renderer.supports(format)) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        GraphNode page;
+        try {
+            page = PAGE_BY_PATH.fetchOne(database, path).get("page");
+        } catch (NoSuchRecordException ex) {
+            page = null;
+        }
+        if (page == null) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        // the page is a dependency even when the renderer doesn't report the nodes it reads
+        RenderDependencies.nodeRead(page.getRawId());
+        resp.setContentType(contentType(format));
+        OutputStream os = resp.getOutputStream();
+        try {
+            renderer.render(os, page, format);
+        } catch (RenderException ex) {
+            log(String.format("Error while rendering page: %s", path), ex);
+            resp.reset();
+            resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            return;
+        }
+        os.flush();
+    }
+}
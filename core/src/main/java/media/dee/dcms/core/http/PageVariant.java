@@ -0,0 +1,68 @@
+package media.dee.dcms.core.http;
+
+import java.util.Objects;
+
+/**
+ * Key of a cached page response, a page is cached once per site, format and theme it's rendered in.
+ */
+public final class PageVariant {
+    private final String site;
+    private final String path;
+    private final String format;
+    private final String theme;
+    private final int hash;
+
+    public PageVariant(String site, String path, String format, String theme) {
+        this.site = Objects.requireNonNull(site, "site");
+        this.path = Objects.requireNonNull(path, "path");
+        this.format = Objects.requireNonNull(format, "format");
+        this.theme = Objects.requireNonNull(theme, "theme");
+        this.hash = Objects.hash(site, path, format, theme);
+    }
+
+    /**
+     * @return host name the page is requested on.
+     */
+    public String getSite() {
+        return site;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    /**
+     * @return theme the page is rendered with, empty for the default theme.
+     */
+    public String getTheme() {
+        return theme;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof PageVariant))
+            return false;
+        PageVariant other = (PageVariant) o;
+        return hash == other.hash
+                && path.equals(other.path)
+                && site.equals(other.site)
+                && format.equals(other.format)
+                && theme.equals(other.theme);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s%s [%s%s]", site, path, format, theme.isEmpty() ? "" : ", " + theme);
+    }
+}
@@ -0,0 +1,160 @@
+package media.dee.dcms.core.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of byte buffers shared by rendering, resource serving and message encoding, to reuse the short lived buffers
+ * of each request instead of allocating them.<br/>
+ * buffers are pooled in power of two size classes from {@link #MIN_SIZE} to {@link #MAX_SIZE}, larger requests are
+ * allocated and dropped on release. each size class is striped by thread so concurrent requests rarely share a queue.<br/>
+ * a buffer must be released once and not used after it's released. the pool statistics are reported by {@link #getStats()}.
+ */
+public final class BufferPool {
+    public static final int MIN_SIZE = 1024;
+    public static final int MAX_SIZE = 64 * 1024;
+    private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_SIZE);
+    private static final int SIZE_CLASSES = Integer.numberOfTrailingZeros(MAX_SIZE) - MIN_SHIFT + 1;
+    private static final int BUFFERS_PER_STRIPE = 16;
+
+    private static final BufferPool heap = new BufferPool(false, BUFFERS_PER_STRIPE);
+    private static final BufferPool direct = new BufferPool(true, BUFFERS_PER_STRIPE);
+
+    private final boolean directBuffers;
+    private final Queue<ByteBuffer>[][] stripes;
+    private final int stripeMask;
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicLong outstanding = new AtomicLong();
+
+    /**
+     * @param directBuffers whether to pool direct buffers
+     * @param buffersPerStripe maximum number of idle buffers kept by each stripe of a size class
+     */
+    @SuppressWarnings("unchecked")
+    public BufferPool(boolean directBuffers, int buffersPerStripe) {
+        this.directBuffers = directBuffers;
+        int stripeCount = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1) << 1);
+        this.stripeMask = stripeCount - 1;
+        this.stripes = new Queue[stripeCount][SIZE_CLASSES];
+        for (Queue<ByteBuffer>[] stripe : stripes)
+            for (int i = 0; i < SIZE_CLASSES; ++i)
+                stripe[i] = new ArrayBlockingQueue<>(buffersPerStripe);
+    }
+
+    /**
+     * @return shared pool of heap buffers, backed by arrays for stream copies.
+     */
+    public static BufferPool heap() {
+        return heap;
+    }
+
+    /**
+     * @return shared pool of direct buffers, for channel and off-heap IO.
+     */
+    public static BufferPool direct() {
+        return direct;
+    }
+
+    private static int sizeClass(int capacity) {
+        if (capacity <= MIN_SIZE)
+            return 0;
+        return 32 - Integer.numberOfLeadingZeros(capacity - 1) - MIN_SHIFT;
+    }
+
+    private Queue<ByteBuffer>[] stripe() {
+        return stripes[(int) Thread.currentThread().getId() & stripeMask];
+    }
+
+    /**
+     * borrow a cleared buffer.
+     * @param capacity minimum capacity of the buffer
+     * @return buffer of at least the capacity, its limit is its capacity
+     */
+    public ByteBuffer acquire(int capacity) {
+        acquired.increment();
+        outstanding.incrementAndGet();
+        if (capacity > MAX_SIZE)
+            return allocate(capacity);
+
+        int sizeClass = sizeClass(capacity);
+        ByteBuffer buffer = stripe()[sizeClass].poll();
+        if (buffer == null)
+            return allocate(MIN_SIZE << sizeClass);
+        hits.increment();
+        return buffer;
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        return directBuffers ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * return a buffer borrowed from this pool.
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null)
+            return;
+        outstanding.decrementAndGet();
+        int capacity = buffer.capacity();
+        if (buffer.isDirect() != directBuffers || buffer.isReadOnly() || capacity > MAX_SIZE || capacity < MIN_SIZE
+                || Integer.bitCount(capacity) != 1) {
+            dropped.increment();
+            return;
+        }
+        buffer.clear();
+        if (!stripe()[sizeClass(capacity)].offer(buffer))
+            dropped.increment();
+    }
+
+    /**
+     * copy a stream through a pooled buffer.
+     * @return number of bytes copied
+     */
+    public long transfer(InputStream in, OutputStream out) throws IOException {
+        ByteBuffer buffer = directBuffers ? heap.acquire(8192) : acquire(8192);
+        try {
+            byte[] bytes = buffer.array();
+            int offset = buffer.arrayOffset();
+            long count = 0;
+            int read;
+            while ((read = in.read(bytes, offset, buffer.capacity())) >= 0) {
+                out.write(bytes, offset, read);
+                count += read;
+            }
+            return count;
+        } finally {
+            if (directBuffers)
+                heap.release(buffer);
+            else
+                release(buffer);
+        }
+    }
+
+    public boolean isDirect() {
+        return directBuffers;
+    }
+
+    /**
+     * @return snapshot of the pool statistics.
+     */
+    public BufferPoolStats getStats() {
+        int pooled = 0;
+        for (Queue<ByteBuffer>[] stripe : stripes)
+            for (Queue<ByteBuffer> queue : stripe)
+                pooled += queue.size();
+        return new BufferPoolStats(directBuffers, acquired.sum(), hits.sum(), dropped.sum(), outstanding.get(), pooled);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BufferPool{%s}", getStats());
+    }
+}
@@ -0,0 +1,68 @@
+package media.dee.dcms.core.io;
+
+/**
+ * Snapshot of buffer pool statistics.
+ */
+public final class BufferPoolStats {
+    private final boolean direct;
+    private final long acquired;
+    private final long hits;
+    private final long dropped;
+    private final long outstanding;
+    private final int pooled;
+
+    public BufferPoolStats(boolean direct, long acquired, long hits, long dropped, long outstanding, int pooled) {
+        this.direct = direct;
+        this.acquired = acquired;
+        this.hits = hits;
+        this.dropped = dropped;
+        this.outstanding = outstanding;
+        this.pooled = pooled;
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    public long getAcquired() {
+        return acquired;
+    }
+
+    /**
+     * @return number of acquisitions served by a pooled buffer.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    public double getHitRate() {
+        return acquired == 0 ? 1.0 : (double) hits / acquired;
+    }
+
+    /**
+     * @return number of released buffers not kept, because the pool was full or they don't fit a size class.
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * @return number of buffers borrowed and not released yet, a growing count is a leak.
+     */
+    public long getOutstanding() {
+        return outstanding;
+    }
+
+    /**
+     * @return number of idle buffers held by the pool.
+     */
+    public int getPooled() {
+        return pooled;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s buffers, acquired: %d, hit rate: %.2f, outstanding: %d, pooled: %d, dropped: %d",
+                direct ? "direct" : "heap", acquired, getHitRate(), outstanding, pooled, dropped);
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package media.dee.dcms.core.layout;
+
+import media.dee.dcms.core.io.BufferPool;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Writer encoding UTF-8 straight into a fixed size chunk written to the output stream whenever it fills up,
+ * so a page is sent while it's rendered instead of being held in memory as a whole.<br/>
+ * chunk buffers are borrowed from the shared {@link BufferPool} and returned when the writer is closed, char buffers are
+ * pooled here as the encoder is only fast on array backed buffers of both kinds. closing the writer flushes it but leaves
+ * the output stream open.
+ */
+public class ChunkedUtf8Writer extends Writer {
+    public static final int CHUNK_SIZE = 8192;
+    private static final int POOL_SIZE = 64;
+
+    private static final Queue<CharBuffer> charPool = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private final OutputStream out;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private CharBuffer chars;
+    private ByteBuffer bytes;
+
+    public ChunkedUtf8Writer(OutputStream out) {
+        this.out = out;
+        CharBuffer pooledChars = charPool.poll();
+        this.chars = pooledChars != null ? pooledChars : CharBuffer.allocate(CHUNK_SIZE);
+        this.bytes = BufferPool.heap().acquire(CHUNK_SIZE);
+    }
+
+    private void ensureOpen() throws IOException {
+        if (chars == null)
+            throw new IOException("Writer is closed");
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        ensureOpen();
+        if (!chars.hasRemaining())
+            encode(false);
+        chars.put((char) c);
+    }
+
+    @Override
+    public void write(char[] buffer, int offset, int length) throws IOException {
+        ensureOpen();
+        while (length > 0) {
+            if (!chars.hasRemaining())
+                encode(false);
+            int count = Math.min(length, chars.remaining());
+            chars.put(buffer, offset, count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    @Override
+    public void write(String str, int offset, int length) throws IOException {
+        ensureOpen();
+        while (length > 0) {
+            if (!chars.hasRemaining())
+                encode(false);
+            int count = Math.min(length, chars.remaining());
+            int position = chars.position();
+            str.getChars(offset, offset + count, chars.array(), chars.arrayOffset() + position);
+            chars.position(position + count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * encode the buffered chars, a trailing high surrogate is kept until its pair is written.
+     */
+    private void encode(boolean endOfInput) throws IOException {
+        chars.flip();
+        while (true) {
+            CoderResult result = encoder.encode(chars, bytes, endOfInput);
+            if (result.isOverflow()) {
+                writeChunk();
+                continue;
+            }
+            break;
+        }
+        if (endOfInput) {
+            while (encoder.flush(bytes).isOverflow())
+                writeChunk();
+        }
+        chars.compact();
+    }
+
+    private void writeChunk() throws IOException {
+        if (bytes.position() == 0)
+            return;
+        out.write(bytes.array(), bytes.arrayOffset(), bytes.position());
+        bytes.clear();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        encode(false);
+        writeChunk();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (chars == null)
+            return;
+        try {
+            encode(true);
+            writeChunk();
+            out.flush();
+        } finally {
+            chars.clear();
+            charPool.offer(chars);
+            BufferPool.heap().release(bytes);
+            chars = null;
+            bytes = null;
+        }
+    }
+}
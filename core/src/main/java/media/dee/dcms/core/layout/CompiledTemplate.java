@@ -0,0 +1,36 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package media.dee.dcms.core.layout;
+
+/**
+ * Handle of a template parsed by a {@link media.dee.dcms.core.services.TemplateService},
+ * rendered without parsing the source again.
+ */
+public interface CompiledTemplate {
+
+    /**
+     * @return content hash of the template source.
+     */
+    String getHash();
+
+    /**
+     * @return the template source as is, for services that render the source on each call.
+     */
+    static CompiledTemplate ofSource(String source) {
+        return new SourceTemplate(source);
+    }
+}
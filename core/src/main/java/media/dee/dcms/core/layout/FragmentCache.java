@@ -0,0 +1,257 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package media.dee.dcms.core.layout;
+
+import media.dee.dcms.core.cache.CacheStats;
+import media.dee.dcms.core.cache.DependencyIndex;
+import media.dee.dcms.core.cache.LongHashSet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+/**
+ * Cache of rendered component fragments stitched into the page output instead of rendering the component again.<br/>
+ * fragments are bounded by their total size and evicted least recently used first. a fragment is invalidated when
+ * any node it depends on is updated or when its template changes.<br/>
+ * the nodes a fragment depends on are recorded by {@link RenderDependencies} while it renders, and reported again to the
+ * recording of the page when the fragment is served from the cache, so the page depends on them as well.
+ */
+public class FragmentCache implements AutoCloseable {
+
+    /**
+     * renders a fragment on a cache miss.
+     */
+    @FunctionalInterface
+    public interface FragmentRenderer {
+        void render(OutputStream outputStream) throws RenderException;
+    }
+
+    private static class Fragment {
+        private final byte[] content;
+        private final LongHashSet dependencies;
+
+        Fragment(byte[] content, LongHashSet dependencies) {
+            this.content = content;
+            this.dependencies = dependencies;
+        }
+    }
+
+    private final long maxBytes;
+    private final LinkedHashMap<FragmentKey, Fragment> fragments = new LinkedHashMap<>(64, 0.75f, true);
+    private final DependencyIndex<FragmentKey> byNode = new DependencyIndex<>();
+    private final Map<String, Set<FragmentKey>> byTemplate = new HashMap<>();
+    private long usedBytes = 0;
+    private long invalidations = 0;
+    private RenderInvalidator invalidator;
+    private LongConsumer invalidationListener;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxBytes maximum total size of the cached fragments
+     */
+    public FragmentCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param maxBytes maximum total size of the cached fragments
+     * @param invalidator invalidator notifying the node updates of the cluster, until the cache is closed
+     */
+    public FragmentCache(long maxBytes, RenderInvalidator invalidator) {
+        this(maxBytes);
+        this.invalidator = invalidator;
+        this.invalidationListener = this::invalidateNode;
+        invalidator.addListener(invalidationListener);
+    }
+
+    /**
+     * write a fragment depending on its component node and the nodes it reads.
+     */
+    public void render(OutputStream outputStream, FragmentKey key, FragmentRenderer renderer) throws RenderException {
+        render(outputStream, key, Collections.emptyList(), renderer);
+    }
+
+    /**
+     * write the cached fragment or render it, cache it and write it.
+     * @param outputStream stream to write the fragment to
+     * @param key fragment key
+     * @param dependencies ids of nodes the fragment depends on in addition to the nodes recorded while it renders
+     * @param renderer renders the fragment on a miss
+     */
+    public void render(OutputStream outputStream, FragmentKey key, Collection<Long> dependencies, FragmentRenderer renderer) throws RenderException {
+        Fragment fragment = getFragment(key);
+        byte[] content;
+        if (fragment != null) {
+            RenderDependencies.nodesRead(fragment.dependencies);
+            RenderDependencies.templateUsed(key.getTemplateVersion());
+            content = fragment.content;
+        } else {
+            long generation;
+            synchronized (this) {
+                generation = invalidations;
+            }
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            LongHashSet nodes;
+            try (RenderDependencies.Recording recording = RenderDependencies.start()) {
+                RenderDependencies.nodeRead(key.getComponentId());
+                for (Long node : dependencies)
+                    RenderDependencies.nodeRead(node);
+                RenderDependencies.templateUsed(key.getTemplateVersion());
+                renderer.render(buffer);
+                nodes = recording.getNodes();
+            } catch (RenderException | RuntimeException ex) {
+                failures.increment();
+                throw ex;
+            }
+            content = buffer.toByteArray();
+            synchronized (this) {
+                // a fragment rendered while nodes were invalidated may be stale
+                if (generation == invalidations)
+                    put(key, content, nodes);
+            }
+        }
+
+        try {
+            outputStream.write(content);
+        } catch (IOException ex) {
+            throw new RenderOutputException(ex);
+        }
+    }
+
+    /**
+     * @return the cached fragment content or null on a miss, shared and shouldn't be modified.
+     */
+    public byte[] get(FragmentKey key) {
+        Fragment fragment = getFragment(key);
+        return fragment == null ? null : fragment.content;
+    }
+
+    private synchronized Fragment getFragment(FragmentKey key) {
+        Fragment fragment = fragments.get(key);
+        if (fragment == null)
+            misses.increment();
+        else
+            hits.increment();
+        return fragment;
+    }
+
+    public void put(FragmentKey key, byte[] content, Collection<Long> dependencies) {
+        LongHashSet nodes = new LongHashSet(dependencies.size() + 1);
+        nodes.add(key.getComponentId());
+        for (Long node : dependencies)
+            nodes.add(node);
+        put(key, content, nodes);
+    }
+
+    /**
+     * @param dependencies ids of the nodes the fragment is rendered from, owned by the cache after the call
+     */
+    public synchronized void put(FragmentKey key, byte[] content, LongHashSet dependencies) {
+        if (content.length > maxBytes)
+            return;
+        remove(key);
+        Fragment fragment = new Fragment(content, dependencies);
+        fragments.put(key, fragment);
+        usedBytes += content.length;
+        byNode.put(key, dependencies);
+        byTemplate.computeIfAbsent(key.getTemplateVersion(), version -> new HashSet<>()).add(key);
+
+        Iterator<Map.Entry<FragmentKey, Fragment>> eldest = fragments.entrySet().iterator();
+        while (usedBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<FragmentKey, Fragment> entry = eldest.next();
+            eldest.remove();
+            unindex(entry.getKey(), entry.getValue());
+            evictions.increment();
+        }
+    }
+
+    private void remove(FragmentKey key) {
+        Fragment fragment = fragments.remove(key);
+        if (fragment != null)
+            unindex(key, fragment);
+    }
+
+    private void unindex(FragmentKey key, Fragment fragment) {
+        usedBytes -= fragment.content.length;
+        byNode.remove(key);
+        Set<FragmentKey> keys = byTemplate.get(key.getTemplateVersion());
+        if (keys != null && keys.remove(key) && keys.isEmpty())
+            byTemplate.remove(key.getTemplateVersion());
+    }
+
+    /**
+     * invalidate the fragments rendered from a node.
+     * @param nodeId id of the updated node
+     */
+    public synchronized void invalidateNode(long nodeId) {
+        ++invalidations;
+        for (FragmentKey key : byNode.invalidate(nodeId))
+            remove(key);
+    }
+
+    /**
+     * invalidate the fragments rendered by a version of a template.
+     * @param templateVersion content hash of the changed template
+     */
+    public synchronized void invalidateTemplate(String templateVersion) {
+        ++invalidations;
+        Set<FragmentKey> keys = byTemplate.get(templateVersion);
+        if (keys != null)
+            for (FragmentKey key : keys.toArray(new FragmentKey[keys.size()]))
+                remove(key);
+    }
+
+    public synchronized void invalidateAll() {
+        ++invalidations;
+        fragments.clear();
+        byNode.clear();
+        byTemplate.clear();
+        usedBytes = 0;
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized CacheStats getStats() {
+        return new CacheStats(hits.sum(), misses.sum(), failures.sum(), evictions.sum(), 0, fragments.size());
+    }
+
+    /**
+     * stop listening to the node updates of the invalidator the cache is created with.
+     */
+    @Override
+    public void close() {
+        if (invalidator != null)
+            invalidator.removeListener(invalidationListener);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package media.dee.dcms.core.layout;
+
+import java.util.Objects;
+
+/**
+ * Key of a rendered component fragment, a fragment is valid for one version of its template and its model.
+ */
+public final class FragmentKey {
+    private final long componentId;
+    private final String templateVersion;
+    private final long modelVersion;
+
+    public FragmentKey(long componentId, String templateVersion, long modelVersion) {
+        this.componentId = componentId;
+        this.templateVersion = Objects.requireNonNull(templateVersion, "templateVersion");
+        this.modelVersion = modelVersion;
+    }
+
+    /**
+     * @param componentId id of the component node
+     * @param template compiled template of the component, its content hash is the template version
+     * @param modelVersion version of the component model, such as its last modification time
+     */
+    public static FragmentKey of(long componentId, CompiledTemplate template, long modelVersion) {
+        return new FragmentKey(componentId, template.getHash(), modelVersion);
+    }
+
+    public long getComponentId() {
+        return componentId;
+    }
+
+    public String getTemplateVersion() {
+        return templateVersion;
+    }
+
+    public long getModelVersion() {
+        return modelVersion;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof FragmentKey))
+            return false;
+        FragmentKey other = (FragmentKey) o;
+        return componentId == other.componentId && modelVersion == other.modelVersion && templateVersion.equals(other.templateVersion);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Long.hashCode(componentId);
+        result = 31 * result + templateVersion.hashCode();
+        return 31 * result + Long.hashCode(modelVersion);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d/%s/%d", componentId, templateVersion, modelVersion);
+    }
+}
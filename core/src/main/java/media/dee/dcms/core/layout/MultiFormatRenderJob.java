@@ -0,0 +1,142 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package media.dee.dcms.core.layout;
+
+import media.dee.dcms.core.db.GraphDatabaseService.GraphNode;
+import media.dee.dcms.core.services.RenderService;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Renders one model in all formats of a theme, such as HTML and AMP, concurrently.<br/>
+ * the model is hydrated once by the caller and shared read only by the renderers of all formats,
+ * each format is written to its own sink, which is closed when the format is rendered. the renders of all formats
+ * {@link RenderDependencies#join(RenderDependencies.Recording) join} the recording of the submitting thread.
+ */
+public class MultiFormatRenderJob {
+
+    /**
+     * opens the output of a format.
+     */
+    @FunctionalInterface
+    public interface FormatSink {
+        OutputStream open(String format) throws IOException;
+    }
+
+    /**
+     * renders the model in a format.
+     */
+    @FunctionalInterface
+    public interface FormatRenderer {
+        void render(OutputStream outputStream, GraphNode model, String format) throws RenderException;
+    }
+
+    private final RenderService renderService;
+    private final Executor executor;
+
+    /**
+     * @param renderService service rendering the templates
+     * @param executor executor to render the formats on
+     */
+    public MultiFormatRenderJob(RenderService renderService, Executor executor) {
+        this.renderService = renderService;
+        this.executor = executor;
+    }
+
+    /**
+     * job rendering the formats by a {@link FormatRenderer} only.
+     * @param executor executor to render the formats on
+     */
+    public MultiFormatRenderJob(Executor executor) {
+        this(null, executor);
+    }
+
+    /**
+     * start rendering all formats.
+     * @param model the hydrated model
+     * @param templates template of each format by format name
+     * @param sinks opens the output of each format
+     * @return completion of each format by format name
+     */
+    public Map<String, CompletableFuture<Void>> submit(GraphNode model, Map<String, Template> templates, FormatSink sinks) {
+        return submit(model, templates.keySet(), (outputStream, sharedModel, format) ->
+                renderService.render(outputStream, templates.get(format), sharedModel), sinks);
+    }
+
+    /**
+     * start rendering all formats by a renderer.
+     * @param model the hydrated model
+     * @param formats format names
+     * @param renderer renders each format
+     * @param sinks opens the output of each format
+     * @return completion of each format by format name
+     */
+    public Map<String, CompletableFuture<Void>> submit(GraphNode model, Collection<String> formats, FormatRenderer renderer, FormatSink sinks) {
+        GraphNode sharedModel = ReadOnlyGraphNode.of(model);
+        RenderDependencies.Recording recording = RenderDependencies.current();
+        Map<String, CompletableFuture<Void>> results = new LinkedHashMap<>();
+        for (String format : formats) {
+            CompletableFuture<Void> result = new CompletableFuture<>();
+            results.put(format, result);
+            try {
+                executor.execute(() -> {
+                    try (RenderDependencies.Recording ignored = RenderDependencies.join(recording);
+                         OutputStream outputStream = sinks.open(format)) {
+                        renderer.render(outputStream, sharedModel, format);
+                        result.complete(null);
+                    } catch (IOException ex) {
+                        result.completeExceptionally(new RenderOutputException(ex));
+                    } catch (Throwable ex) {
+                        result.completeExceptionally(ex);
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                result.completeExceptionally(ex);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * render all formats and wait for them.
+     * @throws RenderException the failure of the first failed format, after all formats are done
+     */
+    public void render(GraphNode model, Map<String, Template> templates, FormatSink sinks) throws RenderException {
+        Map<String, CompletableFuture<Void>> results = submit(model, templates, sinks);
+        RenderException failure = null;
+        for (CompletableFuture<Void> result : results.values()) {
+            try {
+                result.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new ComponentRenderException("Render job is interrupted", ex);
+            } catch (Exception ex) {
+                if (failure == null)
+                    failure = ParallelRenderPipeline.unwrap(ex.getCause() != null ? ex.getCause() : ex);
+            }
+        }
+        if (failure != null)
+            throw failure;
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package media.dee.dcms.core.layout;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders the parts of a page concurrently and writes them in document order.<br/>
+ * each component renders into its own buffer, the buffers are written to the output as soon as all parts before
+ * them are written, so a slow component delays only the parts after it and the page is sent while it's rendered.<br/>
+ * components run on virtual threads when the runtime has them, at most parallelism components render at once,
+ * otherwise on a fixed pool of parallelism threads.<br/>
+ * parts submitted by a part rendering on the pipeline, such as the parts of a nested layout, render inline on its thread,
+ * waiting for them on the pipeline would hold a thread or permit they may need and deadlock once all are taken.
+ */
+public class ParallelRenderPipeline implements AutoCloseable {
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    /**
+     * executor of the part rendering on the current thread.
+     */
+    private static final ThreadLocal<ExecutorService> renderingOn = new ThreadLocal<>();
+
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final boolean ownExecutor;
+
+    /**
+     * @param parallelism maximum number of components rendering at once
+     */
+    public ParallelRenderPipeline(int parallelism) {
+        ExecutorService virtualThreads = newVirtualThreadExecutor();
+        if (virtualThreads != null) {
+            this.executor = virtualThreads;
+            this.permits = new Semaphore(parallelism);
+        } else {
+            this.executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+                Thread thread = new Thread(runnable, String.format("dcms-render-%d", threadCount.incrementAndGet()));
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.permits = null;
+        }
+        this.ownExecutor = true;
+    }
+
+    /**
+     * @param executor executor bounding the components rendering at once, it's not shut down by the pipeline.
+     */
+    public ParallelRenderPipeline(ExecutorService executor) {
+        this.executor = executor;
+        this.permits = null;
+        this.ownExecutor = false;
+    }
+
+    /**
+     * @return virtual thread per task executor, looked up reflectively as the bundle targets Java 8, or null when unavailable.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @return whether components render on virtual threads.
+     */
+    public boolean isVirtual() {
+        return permits != null;
+    }
+
+    /**
+     * start rendering a part into its own buffer.
+     * @return the rendered content
+     */
+    CompletableFuture<byte[]> submit(RenderPart part) {
+        if (part.isStatic() || renderingOn.get() == executor) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            try {
+                part.render(buffer);
+                return CompletableFuture.completedFuture(buffer.toByteArray());
+            } catch (RenderException | RuntimeException ex) {
+                CompletableFuture<byte[]> failed = new CompletableFuture<>();
+                failed.completeExceptionally(ex);
+                return failed;
+            }
+        }
+
+        CompletableFuture<byte[]> result = new CompletableFuture<>();
+        RenderDependencies.Recording page = RenderDependencies.current();
+        try {
+            executor.execute(() -> {
+                if (result.isDone())
+                    return;
+                boolean acquired = false;
+                try (RenderDependencies.Recording ignored = RenderDependencies.join(page)) {
+                    if (permits != null) {
+                        permits.acquire();
+                        acquired = true;
+                    }
+                    if (result.isDone())
+                        return;
+                    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                    renderingOn.set(executor);
+                    try {
+                        part.render(buffer);
+                    } finally {
+                        renderingOn.remove();
+                    }
+                    result.complete(buffer.toByteArray());
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    result.cancel(false);
+                } catch (Throwable ex) {
+                    result.completeExceptionally(ex);
+                } finally {
+                    if (acquired)
+                        permits.release();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            // the pipeline is closed
+            result.completeExceptionally(new ComponentRenderException("Render pipeline is closed", ex));
+        }
+        return result;
+    }
+
+    /**
+     * render the parts of a page.
+     * @param outputStream stream to write the page to, flushed after each part
+     * @param parts page parts in document order
+     * @throws RenderException when a part fails, the remaining parts are cancelled
+     */
+    public void render(OutputStream outputStream, List<RenderPart> parts) throws RenderException {
+        List<CompletableFuture<byte[]>> rendered = new ArrayList<>(parts.size());
+        for (RenderPart part : parts)
+            rendered.add(submit(part));
+
+        int index = 0;
+        try {
+            for (; index < rendered.size(); ++index) {
+                outputStream.write(await(rendered.get(index)));
+                outputStream.flush();
+            }
+        } catch (IOException ex) {
+            throw new RenderOutputException(ex);
+        } finally {
+            for (int i = index; i < rendered.size(); ++i)
+                rendered.get(i).cancel(false);
+        }
+    }
+
+    static byte[] await(CompletableFuture<byte[]> future) throws RenderException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ComponentRenderException("Page render is interrupted", ex);
+        } catch (CancellationException ex) {
+            throw new ComponentRenderException("Component render is cancelled", ex);
+        } catch (ExecutionException | CompletionException ex) {
+            throw unwrap(ex.getCause());
+        }
+    }
+
+    static RenderException unwrap(Throwable cause) {
+        if (cause instanceof RenderException)
+            return (RenderException) cause;
+        if (cause instanceof Error)
+            throw (Error) cause;
+        return new ComponentRenderException(String.valueOf(cause.getMessage()), cause);
+    }
+
+    @Override
+    public void close() {
+        if (ownExecutor)
+            executor.shutdown();
+    }
+}
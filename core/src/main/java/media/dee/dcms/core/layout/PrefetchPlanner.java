@@ -0,0 +1,108 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package media.dee.dcms.core.layout;
+
+import media.dee.dcms.core.db.GraphDatabaseService;
+import media.dee.dcms.core.db.GraphDatabaseService.GraphNode;
+import media.dee.dcms.core.db.Record;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Fetches the subgraph a page render needs in one query per depth of its {@link TraversalShape}.<br/>
+ * all steps of a depth are merged into one UNION ALL query matching from the nodes reached by the previous depth,
+ * so the number of queries depends on the depth of the layout instead of the number of its nodes.
+ */
+public class PrefetchPlanner<R extends Record> {
+    private final GraphDatabaseService<R> database;
+
+    public PrefetchPlanner(GraphDatabaseService<R> database) {
+        this.database = database;
+    }
+
+    /**
+     * @param root node to start the traversal from
+     * @param shape traversal shape, the root of the shape matches the root node
+     * @return the fetched graph
+     */
+    public PrefetchedGraph prefetch(GraphNode root, TraversalShape shape) {
+        PrefetchedGraph graph = new PrefetchedGraph(root);
+
+        List<TraversalShape> steps = new ArrayList<>(shape.getChildren());
+        List<Set<Long>> parents = new ArrayList<>();
+        for (TraversalShape ignored : steps) {
+            Set<Long> rootId = new LinkedHashSet<>();
+            rootId.add(root.getRawId());
+            parents.add(rootId);
+        }
+
+        while (!steps.isEmpty()) {
+            StringBuilder query = new StringBuilder();
+            Map<String, Object> parameters = new HashMap<>();
+            List<TraversalShape> nextSteps = new ArrayList<>();
+            List<Set<Long>> nextParents = new ArrayList<>();
+            // index of the first child of each step in the next level
+            int[] firstChild = new int[steps.size()];
+
+            for (int i = 0; i < steps.size(); ++i) {
+                TraversalShape step = steps.get(i);
+                if (i > 0)
+                    query.append(" UNION ALL ");
+                query.append(String.format("MATCH %s WHERE id(p) IN $ids%d RETURN %d AS step, id(p) AS parent, id(r) AS relationship, n AS node",
+                        step.pattern(), i, i));
+                parameters.put("ids" + i, new ArrayList<>(parents.get(i)));
+
+                firstChild[i] = nextSteps.size();
+                for (TraversalShape child : step.getChildren()) {
+                    nextSteps.add(child);
+                    nextParents.add(new LinkedHashSet<>());
+                }
+            }
+
+            final List<TraversalShape> levelSteps = steps;
+            database.run(query.toString(), parameters, record -> {
+                int step = ((Number) record.get("step")).intValue();
+                long parent = ((Number) record.get("parent")).longValue();
+                long relationship = ((Number) record.get("relationship")).longValue();
+                GraphNode node = record.get("node");
+
+                TraversalShape levelStep = levelSteps.get(step);
+                graph.add(levelStep, parent, relationship, node);
+                for (int child = 0; child < levelStep.getChildren().size(); ++child)
+                    nextParents.get(firstChild[step] + child).add(node.getRawId());
+            });
+            graph.queried();
+
+            steps = new ArrayList<>();
+            parents = new ArrayList<>();
+            for (int i = 0; i < nextSteps.size(); ++i) {
+                if (nextParents.get(i).isEmpty())
+                    continue;
+                steps.add(nextSteps.get(i));
+                parents.add(nextParents.get(i));
+            }
+        }
+
+        graph.complete();
+        return graph;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package media.dee.dcms.core.layout;
+
+import media.dee.dcms.core.db.GraphDatabaseService.GraphNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In memory graph fetched by {@link PrefetchPlanner}, renderers walk it instead of querying the database.<br/>
+ * children of a node are ordered by the id of the relationship reaching them, the order they were linked in.
+ * nodes read from the graph are reported to the current {@link RenderDependencies} recording.
+ */
+public class PrefetchedGraph {
+
+    private static class Edge {
+        private final long relationshipId;
+        private final GraphNode node;
+
+        Edge(long relationshipId, GraphNode node) {
+            this.relationshipId = relationshipId;
+            this.node = node;
+        }
+    }
+
+    private final GraphNode root;
+    private final Map<Long, GraphNode> nodes = new HashMap<>();
+    private final Map<TraversalShape, Map<Long, List<Edge>>> edges = new IdentityHashMap<>();
+    private int queryCount = 0;
+
+    PrefetchedGraph(GraphNode root) {
+        this.root = root;
+        nodes.put(root.getRawId(), root);
+    }
+
+    void add(TraversalShape step, long parentId, long relationshipId, GraphNode node) {
+        GraphNode existing = nodes.putIfAbsent(node.getRawId(), node);
+        edges.computeIfAbsent(step, key -> new HashMap<>())
+                .computeIfAbsent(parentId, key -> new ArrayList<>())
+                .add(new Edge(relationshipId, existing == null ? node : existing));
+    }
+
+    void queried() {
+        ++queryCount;
+    }
+
+    /**
+     * order the children of each node once all levels are fetched.
+     */
+    void complete() {
+        for (Map<Long, List<Edge>> children : edges.values())
+            for (List<Edge> list : children.values())
+                list.sort(Comparator.comparingLong(edge -> edge.relationshipId));
+    }
+
+    public GraphNode getRoot() {
+        return root;
+    }
+
+    /**
+     * @return the fetched node or null when it's not a part of the graph.
+     */
+    public GraphNode getNode(long rawId) {
+        GraphNode node = nodes.get(rawId);
+        if (node != null)
+            RenderDependencies.nodeRead(rawId);
+        return node;
+    }
+
+    /**
+     * @param parent a node of the graph
+     * @param step the traversal step from the parent, as given in the prefetched shape
+     * @return nodes reached from the parent through the step
+     */
+    public List<GraphNode> getChildren(GraphNode parent, TraversalShape step) {
+        Map<Long, List<Edge>> children = edges.get(step);
+        List<Edge> list = children == null ? null : children.get(parent.getRawId());
+        if (list == null)
+            return Collections.emptyList();
+        List<GraphNode> result = new ArrayList<>(list.size());
+        for (Edge edge : list) {
+            RenderDependencies.nodeRead(edge.node.getRawId());
+            result.add(edge.node);
+        }
+        return result;
+    }
+
+    /**
+     * @param parent a node of the graph
+     * @param relationship relationship type
+     * @return nodes reached from the parent through any step following the relationship
+     */
+    public List<GraphNode> getChildren(GraphNode parent, String relationship) {
+        List<GraphNode> result = new ArrayList<>();
+        for (TraversalShape step : edges.keySet())
+            if (step.getRelationship().equals(relationship))
+                result.addAll(getChildren(parent, step));
+        return result;
+    }
+
+    /**
+     * @return number of distinct nodes in the graph including the root.
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * @return number of queries run to fetch the graph.
+     */
+    public int getQueryCount() {
+        return queryCount;
+    }
+}
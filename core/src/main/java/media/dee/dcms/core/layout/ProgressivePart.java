@@ -0,0 +1,60 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package media.dee.dcms.core.layout;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Component part of a progressive page with its own deadline and fallback.
+ */
+public final class ProgressivePart implements RenderPart {
+    static final byte[] NO_CONTENT = new byte[0];
+
+    private final RenderPart part;
+    private final long deadlineNanos;
+    private final byte[] fallback;
+
+    private ProgressivePart(RenderPart part, long deadlineNanos, byte[] fallback) {
+        this.part = part;
+        this.deadlineNanos = deadlineNanos;
+        this.fallback = fallback;
+    }
+
+    /**
+     * @param part the component part
+     * @param deadline time allowed for the component since the page render started
+     * @param unit unit of deadline
+     * @param fallback content sent instead of the component when it misses the deadline or fails, null to send nothing
+     */
+    public static ProgressivePart of(RenderPart part, long deadline, TimeUnit unit, byte[] fallback) {
+        return new ProgressivePart(part, unit.toNanos(deadline), fallback == null ? NO_CONTENT : fallback);
+    }
+
+    @Override
+    public void render(OutputStream outputStream) throws RenderException {
+        part.render(outputStream);
+    }
+
+    public long getDeadlineNanos() {
+        return deadlineNanos;
+    }
+
+    public byte[] getFallback() {
+        return fallback;
+    }
+}
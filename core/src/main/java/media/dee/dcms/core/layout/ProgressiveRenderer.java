@@ -0,0 +1,196 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package media.dee.dcms.core.layout;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Sends a page progressively, so the first bytes don't wait for the slowest component.<br/>
+ * the layout is written right away along with the components finished within the inline budget, a placeholder is
+ * written for each other component. late components are then written as they finish, in any order, as a template
+ * chunk with a script moving it into its placeholder. a component missing its deadline or failing is replaced by its
+ * fallback, inline as well when its deadline is shorter than the inline budget. static parts after the last component,
+ * such as the closing body tag, are written last.
+ */
+public class ProgressiveRenderer {
+    private static final byte[] FILL_SCRIPT = ("<script>function dcmsFill(i){var t=document.getElementById('dcms-fill-'+i),"
+            + "s=document.getElementById('dcms-slot-'+i);if(t&&s){s.parentNode.replaceChild(t.content,s);t.parentNode.removeChild(t);}}</script>")
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final ParallelRenderPipeline pipeline;
+    private final long inlineBudgetNanos;
+    private final long defaultDeadlineNanos;
+    private final byte[] defaultFallback;
+
+    /**
+     * @param pipeline pipeline rendering the components
+     * @param inlineBudget time to wait for components before writing placeholders, since the render started
+     * @param defaultDeadline deadline of components which aren't a {@link ProgressivePart}
+     * @param defaultFallback fallback of components which aren't a {@link ProgressivePart}, null to send nothing
+     * @param unit unit of inlineBudget and defaultDeadline
+     */
+    public ProgressiveRenderer(ParallelRenderPipeline pipeline, long inlineBudget, long defaultDeadline, byte[] defaultFallback, TimeUnit unit) {
+        this.pipeline = pipeline;
+        this.inlineBudgetNanos = unit.toNanos(inlineBudget);
+        this.defaultDeadlineNanos = unit.toNanos(defaultDeadline);
+        this.defaultFallback = defaultFallback == null ? ProgressivePart.NO_CONTENT : defaultFallback;
+    }
+
+    private long deadlineOf(RenderPart part) {
+        return part instanceof ProgressivePart ? ((ProgressivePart) part).getDeadlineNanos() : defaultDeadlineNanos;
+    }
+
+    private byte[] fallbackOf(RenderPart part) {
+        return part instanceof ProgressivePart ? ((ProgressivePart) part).getFallback() : defaultFallback;
+    }
+
+    /**
+     * @return the rendered content, null when it's not finished within the wait or the fallback when it failed.
+     */
+    private byte[] poll(CompletableFuture<byte[]> future, long waitNanos, RenderPart part) {
+        try {
+            return waitNanos > 0 ? future.get(waitNanos, TimeUnit.NANOSECONDS) : future.isDone() ? future.get() : null;
+        } catch (TimeoutException ex) {
+            return null;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return fallbackOf(part);
+        } catch (ExecutionException | RuntimeException ex) {
+            return fallbackOf(part);
+        }
+    }
+
+    /**
+     * @return the rendered content, or the fallback when the component finished after its deadline.
+     */
+    private byte[] onTime(byte[] content, RenderPart part, long finishedAt, long start) {
+        // the completion time may be recorded after the content is available, it's finished by now then
+        long elapsed = (finishedAt == 0 ? System.nanoTime() : finishedAt) - start;
+        return elapsed > deadlineOf(part) ? fallbackOf(part) : content;
+    }
+
+    /**
+     * render the parts of a page progressively.
+     * @param outputStream stream to write the page to
+     * @param parts page parts in document order
+     */
+    public void render(OutputStream outputStream, List<RenderPart> parts) throws RenderException {
+        long start = System.nanoTime();
+        int lastComponent = -1;
+        for (int i = 0; i < parts.size(); ++i)
+            if (!parts.get(i).isStatic())
+                lastComponent = i;
+
+        List<CompletableFuture<byte[]>> rendered = new ArrayList<>(parts.size());
+        BlockingQueue<Integer> finished = new LinkedBlockingQueue<>();
+        AtomicLongArray finishedAt = new AtomicLongArray(parts.size());
+        for (int i = 0; i < parts.size(); ++i) {
+            CompletableFuture<byte[]> future = pipeline.submit(parts.get(i));
+            final int index = i;
+            if (!parts.get(i).isStatic())
+                future.whenComplete((content, error) -> {
+                    finishedAt.set(index, System.nanoTime());
+                    finished.offer(index);
+                });
+            rendered.add(future);
+        }
+
+        try {
+            Set<Integer> pending = new LinkedHashSet<>();
+            for (int i = 0; i <= lastComponent; ++i) {
+                RenderPart part = parts.get(i);
+                if (part.isStatic()) {
+                    outputStream.write(ParallelRenderPipeline.await(rendered.get(i)));
+                    continue;
+                }
+                long deadline = deadlineOf(part);
+                byte[] content = poll(rendered.get(i), Math.min(inlineBudgetNanos, deadline) - (System.nanoTime() - start), part);
+                if (content != null) {
+                    outputStream.write(onTime(content, part, finishedAt.get(i), start));
+                } else if (System.nanoTime() - start >= deadline) {
+                    rendered.get(i).cancel(false);
+                    outputStream.write(fallbackOf(part));
+                } else {
+                    outputStream.write(String.format("<div id=\"dcms-slot-%d\" class=\"dcms-slot\"></div>", i).getBytes(StandardCharsets.UTF_8));
+                    pending.add(i);
+                }
+            }
+            if (!pending.isEmpty())
+                outputStream.write(FILL_SCRIPT);
+            outputStream.flush();
+
+            while (!pending.isEmpty()) {
+                long now = System.nanoTime() - start;
+                long nearest = Long.MAX_VALUE;
+                for (int index : pending)
+                    nearest = Math.min(nearest, deadlineOf(parts.get(index)));
+
+                Integer done = nearest > now ? finished.poll(nearest - now, TimeUnit.NANOSECONDS) : null;
+                if (done != null) {
+                    // components written inline are reported as finished as well
+                    if (!pending.remove(done))
+                        continue;
+                    RenderPart part = parts.get(done);
+                    fill(outputStream, done, onTime(poll(rendered.get(done), 0, part), part, finishedAt.get(done), start));
+                } else {
+                    now = System.nanoTime() - start;
+                    for (Iterator<Integer> iterator = pending.iterator(); iterator.hasNext(); ) {
+                        int index = iterator.next();
+                        if (deadlineOf(parts.get(index)) > now)
+                            continue;
+                        iterator.remove();
+                        rendered.get(index).cancel(false);
+                        fill(outputStream, index, fallbackOf(parts.get(index)));
+                    }
+                }
+                outputStream.flush();
+            }
+
+            for (int i = lastComponent + 1; i < parts.size(); ++i)
+                outputStream.write(ParallelRenderPipeline.await(rendered.get(i)));
+            outputStream.flush();
+        } catch (IOException ex) {
+            throw new RenderOutputException(ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ComponentRenderException("Page render is interrupted", ex);
+        } finally {
+            for (CompletableFuture<byte[]> future : rendered)
+                future.cancel(false);
+        }
+    }
+
+    private static void fill(OutputStream outputStream, int index, byte[] content) throws IOException {
+        outputStream.write(String.format("<template id=\"dcms-fill-%d\">", index).getBytes(StandardCharsets.UTF_8));
+        outputStream.write(content);
+        outputStream.write(String.format("</template><script>dcmsFill(%d)</script>", index).getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package media.dee.dcms.core.layout;
+
+import media.dee.dcms.core.db.CompactGraphNode;
+import media.dee.dcms.core.db.GraphDatabaseService.GraphNode;
+
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Read only view of a graph node shared by renderers running concurrently.<br/>
+ * the node properties can't be changed through the view, nested values are shared as they are.
+ */
+final class ReadOnlyGraphNode extends AbstractMap<String, Object> implements GraphNode {
+    private final GraphNode node;
+    private final Map<String, Object> properties;
+
+    private ReadOnlyGraphNode(GraphNode node) {
+        this.node = node;
+        this.properties = Collections.unmodifiableMap(node);
+    }
+
+    static GraphNode of(GraphNode node) {
+        // compact nodes are immutable by design
+        if (node instanceof ReadOnlyGraphNode || node instanceof CompactGraphNode)
+            return node;
+        return new ReadOnlyGraphNode(node);
+    }
+
+    @Override
+    public Collection<String> getLabels() {
+        return Collections.unmodifiableCollection(node.getLabels());
+    }
+
+    @Override
+    public long getRawId() {
+        return node.getRawId();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key) {
+        return (T) properties.get(key);
+    }
+
+    @Override
+    public Object get(Object key) {
+        return properties.get(key);
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return properties.containsKey(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return properties.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return properties.size();
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return properties.keySet();
+    }
+
+    @Override
+    public Collection<Object> values() {
+        return properties.values();
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return properties.entrySet();
+    }
+}
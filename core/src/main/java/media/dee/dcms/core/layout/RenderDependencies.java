@@ -0,0 +1,144 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package media.dee.dcms.core.layout;
+
+import media.dee.dcms.core.cache.LongHashSet;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Records the nodes and templates a render reads, so caches can be invalidated exactly by the nodes a page depends on.<br/>
+ * a recording is bound to the rendering thread, reads are reported by the code loading nodes and templates through
+ * {@link #nodeRead(long)} and {@link #templateUsed(String)}. recordings nest: a read in a fragment is also a read of the
+ * page rendering it, and components rendered on other threads {@link #join(Recording)} the recording of their page.
+ */
+public final class RenderDependencies {
+    private static final ThreadLocal<Recording> current = new ThreadLocal<>();
+
+    private RenderDependencies() {
+    }
+
+    /**
+     * Dependencies recorded while it's open, closing it restores the previous recording of the thread.
+     */
+    public static final class Recording implements AutoCloseable {
+        private final Recording parent;
+        private final Recording previous;
+        private final LongHashSet nodes = new LongHashSet();
+        private final Set<String> templates = new HashSet<>();
+
+        private Recording(Recording parent, Recording previous) {
+            this.parent = parent;
+            this.previous = previous;
+        }
+
+        private void addNode(long nodeId) {
+            synchronized (this) {
+                nodes.add(nodeId);
+            }
+            if (parent != null)
+                parent.addNode(nodeId);
+        }
+
+        private void addNodes(LongHashSet nodeIds) {
+            synchronized (this) {
+                nodes.addAll(nodeIds);
+            }
+            if (parent != null)
+                parent.addNodes(nodeIds);
+        }
+
+        private void addTemplate(String templateVersion) {
+            synchronized (this) {
+                templates.add(templateVersion);
+            }
+            if (parent != null)
+                parent.addTemplate(templateVersion);
+        }
+
+        /**
+         * @return copy of the ids of the nodes read.
+         */
+        public synchronized LongHashSet getNodes() {
+            return new LongHashSet(nodes);
+        }
+
+        /**
+         * @return versions of the templates used.
+         */
+        public synchronized Set<String> getTemplates() {
+            return new HashSet<>(templates);
+        }
+
+        @Override
+        public void close() {
+            if (previous == null)
+                current.remove();
+            else
+                current.set(previous);
+        }
+    }
+
+    /**
+     * start recording on the current thread, nested in the current recording if any.
+     */
+    public static Recording start() {
+        Recording previous = current.get();
+        Recording recording = new Recording(previous, previous);
+        current.set(recording);
+        return recording;
+    }
+
+    /**
+     * start recording on the current thread on behalf of a recording of another thread.
+     * @param parent recording of the page, may be null
+     * @return the recording or null when there is no parent recording
+     */
+    public static Recording join(Recording parent) {
+        if (parent == null)
+            return null;
+        Recording recording = new Recording(parent, current.get());
+        current.set(recording);
+        return recording;
+    }
+
+    /**
+     * @return the recording of the current thread or null.
+     */
+    public static Recording current() {
+        return current.get();
+    }
+
+    public static void nodeRead(long nodeId) {
+        Recording recording = current.get();
+        if (recording != null)
+            recording.addNode(nodeId);
+    }
+
+    public static void nodesRead(LongHashSet nodeIds) {
+        Recording recording = current.get();
+        if (recording != null)
+            recording.addNodes(nodeIds);
+    }
+
+    public static void templateUsed(String templateVersion) {
+        Recording recording = current.get();
+        if (recording != null)
+            recording.addTemplate(templateVersion);
+    }
+}
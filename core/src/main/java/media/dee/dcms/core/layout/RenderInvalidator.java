@@ -0,0 +1,93 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package media.dee.dcms.core.layout;
+
+import media.dee.dcms.core.cache.ClusterCacheProvider;
+import media.dee.dcms.core.cache.ClusterTopic;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongConsumer;
+
+/**
+ * Propagates node updates to the render caches and publishers of all nodes of the cluster.<br/>
+ * caches register a listener invalidating the entries depending on a node, {@link #nodeChanged(long)} notifies the
+ * listeners of this node at once and publishes the update on a cluster topic when a {@link ClusterCacheProvider} is
+ * available, the other nodes notify their listeners when they receive it.
+ */
+@Component(service = RenderInvalidator.class)
+public class RenderInvalidator {
+    private static final String CLUSTER_TOPIC = "render-invalidations";
+
+    private final List<LongConsumer> listeners = new CopyOnWriteArrayList<>();
+    private ClusterCacheProvider clusterCacheProvider;
+    private ClusterTopic<Long> cluster;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL, policyOption = ReferencePolicyOption.GREEDY)
+    void setClusterCacheProvider(ClusterCacheProvider clusterCacheProvider) {
+        this.clusterCacheProvider = clusterCacheProvider;
+    }
+
+    @Activate
+    void activate() {
+        if (clusterCacheProvider != null)
+            cluster = clusterCacheProvider.getTopic(CLUSTER_TOPIC, this::notifyListeners);
+    }
+
+    @Deactivate
+    void deactivate() {
+        if (cluster != null)
+            cluster.close();
+        cluster = null;
+    }
+
+    public void addListener(LongConsumer listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(LongConsumer listener) {
+        listeners.remove(listener);
+    }
+
+    private void notifyListeners(Long nodeId) {
+        for (LongConsumer listener : listeners)
+            listener.accept(nodeId);
+    }
+
+    /**
+     * invalidate the cached renders depending on a node on all nodes of the cluster.
+     */
+    public void nodeChanged(long nodeId) {
+        notifyListeners(nodeId);
+        ClusterTopic<Long> topic = cluster;
+        if (topic != null)
+            topic.publish(nodeId);
+    }
+
+    /**
+     * @return whether updates are published to the other nodes of the cluster.
+     */
+    public boolean isClustered() {
+        return cluster != null;
+    }
+}
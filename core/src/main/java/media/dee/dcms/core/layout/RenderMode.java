@@ -0,0 +1,32 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package media.dee.dcms.core.layout;
+
+/**
+ * How a page is sent to the client.
+ */
+public enum RenderMode {
+    /**
+     * the page is written in document order.
+     */
+    SEQUENTIAL,
+    /**
+     * the layout and the components rendered in time are sent first, slow components are sent later in the same
+     * response and moved into their placeholders by the client, see {@link ProgressiveRenderer}.
+     */
+    PROGRESSIVE
+}
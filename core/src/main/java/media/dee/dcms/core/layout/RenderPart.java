@@ -0,0 +1,58 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package media.dee.dcms.core.layout;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A part of a page rendered by {@link ParallelRenderPipeline}, either a static part of the layout or a component.
+ */
+@FunctionalInterface
+public interface RenderPart {
+
+    void render(OutputStream outputStream) throws RenderException;
+
+    /**
+     * @return whether the part is static content rendered without any work, so it's written without a task.
+     */
+    default boolean isStatic() {
+        return false;
+    }
+
+    /**
+     * @param content static content, such as the layout markup between placeholders
+     * @return part writing the content as is
+     */
+    static RenderPart literal(byte[] content) {
+        return new RenderPart() {
+            @Override
+            public void render(OutputStream outputStream) throws RenderException {
+                try {
+                    outputStream.write(content);
+                } catch (IOException ex) {
+                    throw new RenderOutputException(ex);
+                }
+            }
+
+            @Override
+            public boolean isStatic() {
+                return true;
+            }
+        };
+    }
+}
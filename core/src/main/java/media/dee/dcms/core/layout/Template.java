@@ -19,4 +19,11 @@ package media.dee.dcms.core.layout;
 public interface Template {
     String getTemplate();
     String getSyntax();
+
+    /**
+     * @return id of the template staying the same when it's reloaded with a new source, null when the template has no id.
+     */
+    default String getId() {
+        return null;
+    }
 }
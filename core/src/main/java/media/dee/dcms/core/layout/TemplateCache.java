@@ -0,0 +1,256 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package media.dee.dcms.core.layout;
+
+import media.dee.dcms.core.db.GraphDatabaseService;
+import media.dee.dcms.core.services.TemplateService;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of templates compiled by a {@link TemplateService}.<br/>
+ * compiled templates are shared by syntax and content hash, and each template keeps the version compiled from its
+ * last seen source, by {@link Template#getId()} or by instance when it has no id. when the source of a template changes,
+ * including a template reloaded with the same id, the previous version keeps being served while the new source is
+ * compiled in the background, so after warm-up templates are never parsed on the request path.
+ * a source failing to compile is reported by {@link #getFailureCount()} and the previous version stays in use.<br/>
+ * both the compiled templates and the templates keeping a version are bounded by the maximum size, a template keeps
+ * a version only while it's cached by content hash.
+ */
+public class TemplateCache {
+
+    private static class Compiled {
+        private final String source;
+        private final String syntax;
+        private final CompiledTemplate template;
+
+        Compiled(String source, String syntax, CompiledTemplate template) {
+            this.source = source;
+            this.syntax = syntax;
+            this.template = template;
+        }
+
+        boolean isCompiledFrom(String source, String syntax) {
+            return this.source.equals(source) && Objects.equals(this.syntax, syntax);
+        }
+    }
+
+    /**
+     * key of a template without an id, equal to the same instance only.
+     */
+    private static final class InstanceKey {
+        private final Template template;
+
+        InstanceKey(Template template) {
+            this.template = template;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof InstanceKey && ((InstanceKey) o).template == template;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(template);
+        }
+    }
+
+    private final TemplateService templateService;
+    private final Executor compiler;
+    private final int maxSize;
+    private final Map<String, CompiledTemplate> byHash;
+    private final Map<Object, Compiled> byTemplate;
+    private final Set<Object> recompiling = ConcurrentHashMap.newKeySet();
+    private final LongAdder compilations = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * @param templateService service to compile and render the templates
+     * @param maxSize maximum number of compiled templates shared by content hash, and of templates keeping a version
+     * @param compiler executor to recompile changed templates on
+     */
+    public TemplateCache(TemplateService templateService, int maxSize, Executor compiler) {
+        this.templateService = templateService;
+        this.compiler = compiler;
+        this.maxSize = maxSize;
+        this.byHash = new LinkedHashMap<String, CompiledTemplate>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompiledTemplate> eldest) {
+                if (size() <= TemplateCache.this.maxSize)
+                    return false;
+                release(eldest.getValue());
+                return true;
+            }
+        };
+        this.byTemplate = new LinkedHashMap<Object, Compiled>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Compiled> eldest) {
+                return size() > TemplateCache.this.maxSize;
+            }
+        };
+    }
+
+    private static Object key(Template template) {
+        String id = template.getId();
+        return id == null ? new InstanceKey(template) : id;
+    }
+
+    /**
+     * drop the versions of the templates compiled to a template evicted by content hash, so they're not held outside the bound.
+     */
+    private void release(CompiledTemplate evicted) {
+        synchronized (byTemplate) {
+            byTemplate.values().removeIf(compiled -> compiled.template == evicted);
+        }
+    }
+
+    /**
+     * get the compiled version of a template, compiled on the caller only the first time the template is seen.
+     * @param template the template
+     * @return the compiled template, the previous version while a changed source is being recompiled.
+     * @throws RenderException when the template is compiled for the first time and its source is invalid
+     */
+    public CompiledTemplate get(Template template) throws RenderException {
+        String source = template.getTemplate();
+        String syntax = template.getSyntax();
+        Object key = key(template);
+        Compiled compiled;
+        synchronized (byTemplate) {
+            compiled = byTemplate.get(key);
+        }
+        if (compiled != null) {
+            if (!compiled.isCompiledFrom(source, syntax))
+                recompile(key, source, syntax, compiled.template);
+            RenderDependencies.templateUsed(compiled.template.getHash());
+            return compiled.template;
+        }
+
+        CompiledTemplate result = compile(source, syntax);
+        synchronized (byTemplate) {
+            byTemplate.put(key, new Compiled(source, syntax, result));
+        }
+        RenderDependencies.templateUsed(result.getHash());
+        return result;
+    }
+
+    /**
+     * get the compiled version of a template source.
+     * @param source template source
+     * @param syntax template syntax
+     * @return the compiled template
+     * @throws RenderException when the source is invalid
+     */
+    public CompiledTemplate get(String source, String syntax) throws RenderException {
+        return compile(source, syntax);
+    }
+
+    public StringBuffer render(Template template, GraphDatabaseService.GraphNode model) throws RenderException {
+        return templateService.render(get(template), model);
+    }
+
+    private CompiledTemplate compile(String source, String syntax) throws RenderException {
+        String key = String.format("%s:%s", syntax, SourceTemplate.hash(source));
+        synchronized (byHash) {
+            CompiledTemplate compiled = byHash.get(key);
+            if (compiled != null)
+                return compiled;
+        }
+
+        CompiledTemplate compiled;
+        try {
+            compiled = templateService.compile(source);
+        } catch (RenderException ex) {
+            failures.increment();
+            throw ex;
+        }
+        compilations.increment();
+        synchronized (byHash) {
+            byHash.put(key, compiled);
+        }
+        return compiled;
+    }
+
+    private void recompile(Object key, String source, String syntax, CompiledTemplate previous) {
+        if (!recompiling.add(key))
+            return;
+        try {
+            compiler.execute(() -> {
+                Compiled compiled;
+                try {
+                    compiled = new Compiled(source, syntax, compile(source, syntax));
+                } catch (RenderException ex) {
+                    // keep the previous version until the source changes again
+                    compiled = new Compiled(source, syntax, previous);
+                }
+                try {
+                    synchronized (byTemplate) {
+                        byTemplate.put(key, compiled);
+                    }
+                } finally {
+                    recompiling.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            recompiling.remove(key);
+        }
+    }
+
+    /**
+     * compile templates ahead of the first request.
+     */
+    public void warmUp(Iterable<? extends Template> templates) throws RenderException {
+        for (Template template : templates)
+            get(template);
+    }
+
+    public void invalidate(Template template) {
+        synchronized (byTemplate) {
+            byTemplate.remove(key(template));
+        }
+    }
+
+    public void clear() {
+        synchronized (byTemplate) {
+            byTemplate.clear();
+        }
+        synchronized (byHash) {
+            byHash.clear();
+        }
+    }
+
+    public long getCompilationCount() {
+        return compilations.sum();
+    }
+
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    public int size() {
+        synchronized (byHash) {
+            return byHash.size();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package media.dee.dcms.core.layout;
+
+/**
+ * Thrown when a template can't be compiled or a compiled template isn't supported by the rendering service.
+ */
+public class TemplateCompileException extends RenderException {
+    public TemplateCompileException(String message) {
+        super(message);
+    }
+
+    public TemplateCompileException(String message, Throwable throwable) {
+        super(message, throwable);
+    }
+}
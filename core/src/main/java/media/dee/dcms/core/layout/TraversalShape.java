@@ -0,0 +1,139 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package media.dee.dcms.core.layout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Declared shape of the graph a page render walks, from the root node through relationships to the nodes it needs.<br/>
+ * <pre>
+ *     TraversalShape.root(
+ *         TraversalShape.outgoing("HAS_CONTAINER",
+ *             TraversalShape.outgoing("HAS_COMPONENT",
+ *                 TraversalShape.outgoing("SHOWS").withLabel("Content"))));
+ * </pre>
+ */
+public final class TraversalShape {
+    public enum Direction {
+        OUTGOING, INCOMING
+    }
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private final String relationship;
+    private final Direction direction;
+    private final String label;
+    private final List<TraversalShape> children;
+
+    private TraversalShape(String relationship, Direction direction, String label, List<TraversalShape> children) {
+        this.relationship = relationship;
+        this.direction = direction;
+        this.label = label;
+        this.children = children;
+    }
+
+    private static String identifier(String name) {
+        // names are written into the query, so only plain identifiers are accepted
+        if (name == null || !IDENTIFIER.matcher(name).matches())
+            throw new IllegalArgumentException(String.format("Invalid traversal identifier: %s", name));
+        return name;
+    }
+
+    private static List<TraversalShape> list(TraversalShape[] children) {
+        return Collections.unmodifiableList(new ArrayList<>(Arrays.asList(children)));
+    }
+
+    /**
+     * @param children steps starting from the root node
+     * @return the shape of a traversal starting from the root node
+     */
+    public static TraversalShape root(TraversalShape... children) {
+        return new TraversalShape(null, null, null, list(children));
+    }
+
+    /**
+     * @param relationship relationship type to follow from the parent node
+     * @param children steps starting from the reached nodes
+     */
+    public static TraversalShape outgoing(String relationship, TraversalShape... children) {
+        return new TraversalShape(identifier(relationship), Direction.OUTGOING, null, list(children));
+    }
+
+    /**
+     * @param relationship relationship type to follow into the parent node
+     * @param children steps starting from the reached nodes
+     */
+    public static TraversalShape incoming(String relationship, TraversalShape... children) {
+        return new TraversalShape(identifier(relationship), Direction.INCOMING, null, list(children));
+    }
+
+    /**
+     * @param label label the reached nodes should have
+     * @return the same step reaching only nodes with the label
+     */
+    public TraversalShape withLabel(String label) {
+        if (isRoot())
+            throw new IllegalStateException("Root of a traversal can't have a label");
+        return new TraversalShape(relationship, direction, identifier(label), children);
+    }
+
+    public boolean isRoot() {
+        return relationship == null;
+    }
+
+    public String getRelationship() {
+        return relationship;
+    }
+
+    public Direction getDirection() {
+        return direction;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public List<TraversalShape> getChildren() {
+        return children;
+    }
+
+    /**
+     * @return the query pattern of the step from parent node p to node n through relationship r.
+     */
+    String pattern() {
+        String node = label == null ? "(n)" : String.format("(n:%s)", label);
+        return direction == Direction.OUTGOING
+                ? String.format("(p)-[r:%s]->%s", relationship, node)
+                : String.format("(p)<-[r:%s]-%s", relationship, node);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(isRoot() ? "root" : pattern());
+        if (!children.isEmpty()) {
+            builder.append(" { ");
+            for (int i = 0; i < children.size(); ++i)
+                builder.append(i == 0 ? "" : ", ").append(children.get(i));
+            builder.append(" }");
+        }
+        return builder.toString();
+    }
+}
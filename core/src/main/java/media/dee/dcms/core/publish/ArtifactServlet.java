@@ -0,0 +1,91 @@
+package media.dee.dcms.core.publish;
+
+import media.dee.dcms.core.http.ContentNegotiation;
+import media.dee.dcms.core.http.ContentSender;
+import media.dee.dcms.core.layout.RenderException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Serves published pages of a format from the {@link ArtifactStore}.<br/>
+ * large artifacts are memory mapped and written to the connection without copying them to the heap, small artifacts
+ * are read through a pooled direct buffer as a mapping costs more than reading them and is only released by the GC.
+ * the pre-compressed copy is served to clients accepting gzip. a page missing from the store is rendered on demand and stored.
+ */
+public class ArtifactServlet extends HttpServlet {
+    private static final long MAP_THRESHOLD = 1024 * 1024;
+
+    private final PublishPipeline pipeline;
+    private final String format;
+
+    /**
+     * @param pipeline pipeline publishing the pages
+     * @param format format of the served pages
+     */
+    public ArtifactServlet(PublishPipeline pipeline, String format) {
+        this.pipeline = pipeline;
+        this.format = format;
+    }
+
+    private ArtifactStore.Artifact getArtifact(String path) throws RenderException {
+        ArtifactStore.Artifact artifact = pipeline.getStore().get(format, path);
+        if (artifact != null)
+            return artifact;
+        return pipeline.renderOnDemand(format, path);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        String path = req.getPathInfo() == null ? "/" : req.getPathInfo();
+        ArtifactStore.Artifact artifact;
+        try {
+            artifact = getArtifact(path);
+        } catch (IllegalArgumentException ex) {
+            artifact = null;
+        } catch (RenderException ex) {
+            log(String.format("Error while rendering page: %s", path), ex);
+            resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            return;
+        }
+        if (artifact == null) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        File gzipFile = artifact.getGzipFile();
+        boolean gzip = gzipFile != null && ContentNegotiation.acceptsGzip(req.getHeader("Accept-Encoding"));
+        String eTag = gzip ? artifact.getETag().substring(0, artifact.getETag().length() - 1) + "-gz\"" : artifact.getETag();
+        resp.setHeader("ETag", eTag);
+        resp.setDateHeader("Last-Modified", artifact.getLastModified());
+        resp.setHeader("Cache-Control", "no-cache");
+        if (gzipFile != null)
+            resp.setHeader("Vary", "Accept-Encoding");
+        if (ContentNegotiation.matches(req.getHeader("If-None-Match"), eTag)) {
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        File file = gzip ? gzipFile : artifact.getFile();
+        resp.setContentType("text/html;charset=UTF-8");
+        if (gzip)
+            resp.setHeader("Content-Encoding", "gzip");
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            resp.setContentLengthLong(size);
+            OutputStream os = resp.getOutputStream();
+            if (size >= MAP_THRESHOLD)
+                ContentSender.send(os, channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            else
+                ContentSender.send(os, channel, 0, size);
+            os.flush();
+        }
+    }
+}
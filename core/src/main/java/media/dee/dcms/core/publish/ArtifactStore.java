@@ -0,0 +1,165 @@
+package media.dee.dcms.core.publish;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local file store of published pages, each page is stored as {format}/{path}/index.html along with a gzip
+ * compressed copy, compressed once at publish time with the best compression.<br/>
+ * files are written to a temporary file and moved in place, so readers never see a partial artifact.<br/>
+ * the ETag of a page is the CRC32 of its content, stored next to it as index.html.etag. it's written after the page and
+ * its compressed copy, so a reader getting the new ETag always gets the new content.
+ */
+public class ArtifactStore {
+    private static final String INDEX = "index.html";
+    private static final String GZIP = INDEX + ".gz";
+    private static final String ETAG = INDEX + ".etag";
+
+    /**
+     * A published page in the store.
+     */
+    public static final class Artifact {
+        private final File file;
+        private final File gzipFile;
+        private final String eTag;
+
+        Artifact(File file, File gzipFile, String eTag) {
+            this.file = file;
+            this.gzipFile = gzipFile.isFile() ? gzipFile : null;
+            this.eTag = eTag;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * @return the compressed copy or null when the page isn't worth compressing.
+         */
+        public File getGzipFile() {
+            return gzipFile;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        public long getLastModified() {
+            return file.lastModified();
+        }
+    }
+
+    private final Path root;
+
+    /**
+     * @param root folder of the store
+     */
+    public ArtifactStore(File root) {
+        this.root = root.toPath().toAbsolutePath().normalize();
+    }
+
+    /**
+     * @return folder of a page, inside the store folder.
+     * @throws IllegalArgumentException when the path escapes the store folder
+     */
+    private Path folder(String format, String path) {
+        Path folder = root.resolve(format).resolve(path.startsWith("/") ? path.substring(1) : path).normalize();
+        if (!folder.startsWith(root.resolve(format)))
+            throw new IllegalArgumentException(String.format("Invalid page path: %s", path));
+        return folder;
+    }
+
+    /**
+     * @return the stored artifact of a page or null when it's not published.
+     */
+    public Artifact get(String format, String path) {
+        Path folder = folder(format, path);
+        File file = folder.resolve(INDEX).toFile();
+        if (!file.isFile())
+            return null;
+        String eTag;
+        try {
+            eTag = new String(Files.readAllBytes(folder.resolve(ETAG)), StandardCharsets.US_ASCII);
+        } catch (IOException ex) {
+            // stored before its ETag, or removed meanwhile
+            try {
+                eTag = eTag(Files.readAllBytes(file.toPath()));
+            } catch (NoSuchFileException removed) {
+                return null;
+            } catch (IOException readFailure) {
+                throw new UncheckedIOException(readFailure);
+            }
+        }
+        return new Artifact(file, folder.resolve(GZIP).toFile(), eTag);
+    }
+
+    /**
+     * store the rendered content of a page, replacing the previous artifact.
+     */
+    public Artifact store(PageRef page, byte[] content) throws IOException {
+        Path folder = folder(page.getFormat(), page.getPath());
+        Files.createDirectories(folder);
+        Path target = folder.resolve(INDEX);
+        Path gzipTarget = folder.resolve(GZIP);
+        String eTag = eTag(content);
+
+        write(target, content);
+        byte[] compressed = gzip(content);
+        if (compressed != null)
+            write(gzipTarget, compressed);
+        else
+            Files.deleteIfExists(gzipTarget);
+        write(folder.resolve(ETAG), eTag.getBytes(StandardCharsets.US_ASCII));
+        return new Artifact(target.toFile(), gzipTarget.toFile(), eTag);
+    }
+
+    public void remove(PageRef page) throws IOException {
+        Path folder = folder(page.getFormat(), page.getPath());
+        Files.deleteIfExists(folder.resolve(ETAG));
+        Files.deleteIfExists(folder.resolve(INDEX));
+        Files.deleteIfExists(folder.resolve(GZIP));
+    }
+
+    private static String eTag(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return String.format("\"%x-%x\"", crc.getValue(), content.length);
+    }
+
+    private static void write(Path target, byte[] content) throws IOException {
+        Path temp = Files.createTempFile(target.getParent(), "." + target.getFileName(), ".tmp");
+        Files.write(temp, content);
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            Files.deleteIfExists(temp);
+            throw ex;
+        }
+    }
+
+    private static byte[] gzip(byte[] content) {
+        ByteArrayOutputStream os = new ByteArrayOutputStream(content.length / 3 + 64);
+        try (OutputStream gzip = new GZIPOutputStream(os) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            gzip.write(content);
+        } catch (IOException ex) {
+            return null;
+        }
+        byte[] compressed = os.toByteArray();
+        return compressed.length < content.length ? compressed : null;
+    }
+}
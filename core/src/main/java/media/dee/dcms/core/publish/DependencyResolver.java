@@ -0,0 +1,27 @@
+package media.dee.dcms.core.publish;
+
+import media.dee.dcms.core.cache.LongHashSet;
+
+import java.util.Collection;
+
+/**
+ * Resolves the pages affected by a change of a node.
+ */
+@FunctionalInterface
+public interface DependencyResolver {
+
+    /**
+     * @param nodeId id of the changed node
+     * @return pages rendered from the node, in all their formats
+     */
+    Collection<PageRef> affectedPages(long nodeId);
+
+    /**
+     * called after a page is rendered with the nodes read by the render, resolvers tracking the dependencies of
+     * each page should override it.
+     * @param page the rendered page
+     * @param nodeIds ids of the nodes read, null when the page is removed
+     */
+    default void rendered(PageRef page, LongHashSet nodeIds) {
+    }
+}
@@ -0,0 +1,54 @@
+package media.dee.dcms.core.publish;
+
+import media.dee.dcms.core.db.GraphDatabaseService;
+import media.dee.dcms.core.db.PreparedQuery;
+import media.dee.dcms.core.db.Record;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Resolves the affected pages by walking the graph from the changed node to the page nodes reaching it.<br/>
+ * the default query follows any relationship up to {@link #DEFAULT_DEPTH} hops from a page, covering its layout,
+ * categories and related programs or episodes. the query gets the changed node as $id and returns id and path of each page.
+ */
+public class GraphDependencyResolver implements DependencyResolver {
+    public static final int DEFAULT_DEPTH = 3;
+    public static final String DEFAULT_QUERY = "MATCH (changed) WHERE id(changed) = $id "
+            + "MATCH (page:Page)-[*0.." + DEFAULT_DEPTH + "]->(changed) "
+            + "RETURN DISTINCT id(page) AS id, page.path AS path";
+
+    private final GraphDatabaseService<? extends Record> database;
+    private final PreparedQuery query;
+    private final Collection<String> formats;
+
+    /**
+     * @param database graph database
+     * @param query query resolving the pages of a changed node
+     * @param formats formats each page is published in
+     */
+    public GraphDependencyResolver(GraphDatabaseService<? extends Record> database, String query, Collection<String> formats) {
+        this.database = database;
+        this.query = PreparedQuery.prepare(query);
+        this.formats = formats;
+    }
+
+    public GraphDependencyResolver(GraphDatabaseService<? extends Record> database, Collection<String> formats) {
+        this(database, DEFAULT_QUERY, formats);
+    }
+
+    @Override
+    public Collection<PageRef> affectedPages(long nodeId) {
+        List<PageRef> pages = new ArrayList<>();
+        query.run(database, record -> {
+            long id = ((Number) record.get("id")).longValue();
+            String path = record.get("path");
+            if (path == null)
+                return;
+            for (String format : formats)
+                pages.add(new PageRef(id, path, format));
+        }, nodeId);
+        return pages;
+    }
+}
@@ -0,0 +1,50 @@
+package media.dee.dcms.core.publish;
+
+import java.util.Objects;
+
+/**
+ * A page to publish: the page node, its public path and the format it's rendered in.
+ */
+public final class PageRef {
+    private final long nodeId;
+    private final String path;
+    private final String format;
+
+    public PageRef(long nodeId, String path, String format) {
+        this.nodeId = nodeId;
+        this.path = Objects.requireNonNull(path, "path");
+        this.format = Objects.requireNonNull(format, "format");
+    }
+
+    public long getNodeId() {
+        return nodeId;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof PageRef))
+            return false;
+        PageRef other = (PageRef) o;
+        return nodeId == other.nodeId && path.equals(other.path) && format.equals(other.format);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(nodeId, path, format);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s:%s (%d)", format, path, nodeId);
+    }
+}
@@ -0,0 +1,62 @@
+package media.dee.dcms.core.publish;
+
+import media.dee.dcms.core.db.GraphDatabaseService.GraphNode;
+import media.dee.dcms.core.layout.ComponentRenderException;
+import media.dee.dcms.core.layout.RenderException;
+import media.dee.dcms.core.layout.Template;
+import media.dee.dcms.core.services.RenderService;
+
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Renders a page node in a format.
+ */
+@FunctionalInterface
+public interface PageRenderer {
+    String DEFAULT_FORMAT = "html";
+
+    void render(OutputStream outputStream, GraphNode page, String format) throws RenderException;
+
+    /**
+     * @return whether the renderer produces the format, pages of other formats can't be rendered.
+     */
+    default boolean supports(String format) {
+        return true;
+    }
+
+    /**
+     * @return renderer of the default template of each page, producing the default format only.
+     */
+    static PageRenderer of(RenderService renderService) {
+        return of(renderService, Collections.singletonMap(DEFAULT_FORMAT, null));
+    }
+
+    /**
+     * @param renderService service rendering the templates
+     * @param templates template of each format by format name, a null template renders the default template of the page
+     * @return renderer of the formats having a template
+     */
+    static PageRenderer of(RenderService renderService, Map<String, Template> templates) {
+        Map<String, Template> formats = new LinkedHashMap<>(templates);
+        return new PageRenderer() {
+            @Override
+            public void render(OutputStream outputStream, GraphNode page, String format) throws RenderException {
+                if (!supports(format))
+                    throw new ComponentRenderException(String.format("Format isn't supported: %s", format));
+                Template template = formats.get(format);
+                if (template == null)
+                    renderService.render(outputStream, page);
+                else
+                    renderService.render(outputStream, template, page);
+            }
+
+            @Override
+            public boolean supports(String format) {
+                return formats.containsKey(format);
+            }
+        };
+    }
+}
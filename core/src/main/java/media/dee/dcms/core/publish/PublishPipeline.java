@@ -0,0 +1,243 @@
+package media.dee.dcms.core.publish;
+
+import media.dee.dcms.core.cache.LongHashSet;
+import media.dee.dcms.core.db.GraphDatabaseService;
+import media.dee.dcms.core.db.GraphDatabaseService.GraphNode;
+import media.dee.dcms.core.db.NoSuchRecordException;
+import media.dee.dcms.core.db.PreparedQuery;
+import media.dee.dcms.core.db.Record;
+import media.dee.dcms.core.layout.ComponentRenderException;
+import media.dee.dcms.core.layout.MultiFormatRenderJob;
+import media.dee.dcms.core.layout.RenderDependencies;
+import media.dee.dcms.core.layout.RenderException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Incremental publishing of static pages.<br/>
+ * a node change re-renders only the pages depending on it, in parallel on the executor. a page is rendered at most
+ * once at a time, a change arriving while the page renders marks it to be rendered once more when done,
+ * so bursts of changes to the same page coalesce into at most two renders.<br/>
+ * the formats of a page are rendered together by a {@link MultiFormatRenderJob}, from one load of the page node.
+ */
+public class PublishPipeline implements PublishService {
+    private static final PreparedQuery PAGE_BY_ID = PreparedQuery.prepare("MATCH (page) WHERE id(page) = $id RETURN page");
+    private static final PreparedQuery PAGE_BY_PATH = PreparedQuery.prepare("MATCH (page:Page) WHERE page.path = $path RETURN page");
+
+    private final GraphDatabaseService<? extends Record> database;
+    private final PageRenderer renderer;
+    private final DependencyResolver dependencyResolver;
+    private final ArtifactStore store;
+    private final Executor executor;
+    private final MultiFormatRenderJob renderJob;
+    private final ConcurrentMap<PageRef, CompletableFuture<ArtifactStore.Artifact>> inFlight = new ConcurrentHashMap<>();
+    private final Set<PageRef> dirty = ConcurrentHashMap.newKeySet();
+
+    public PublishPipeline(GraphDatabaseService<? extends Record> database, PageRenderer renderer, DependencyResolver dependencyResolver,
+                           ArtifactStore store, Executor executor) {
+        this.database = database;
+        this.renderer = renderer;
+        this.dependencyResolver = dependencyResolver;
+        this.store = store;
+        this.executor = executor;
+        this.renderJob = new MultiFormatRenderJob(executor);
+    }
+
+    public ArtifactStore getStore() {
+        return store;
+    }
+
+    @Override
+    public CompletionStage<Integer> nodeChanged(long nodeId) {
+        return CompletableFuture.supplyAsync(() -> dependencyResolver.affectedPages(nodeId), executor)
+                .thenCompose(pages -> {
+                    Map<Long, List<PageRef>> formats = new LinkedHashMap<>();
+                    for (PageRef page : pages)
+                        formats.computeIfAbsent(page.getNodeId(), id -> new ArrayList<>()).add(page);
+                    List<CompletableFuture<ArtifactStore.Artifact>> published = new ArrayList<>(pages.size());
+                    for (List<PageRef> page : formats.values())
+                        published.addAll(publish(page));
+                    return CompletableFuture.allOf(published.toArray(new CompletableFuture[published.size()]))
+                            .thenApply(ignored -> pages.size());
+                });
+    }
+
+    @Override
+    public CompletableFuture<ArtifactStore.Artifact> publish(PageRef page) {
+        return publish(Collections.singletonList(page)).get(0);
+    }
+
+    /**
+     * render the formats of a page, formats rendering at the moment are rendered once more when done.
+     * @param formats the page in each format, all of the same page node
+     * @return the artifact of each format, in the order of the formats
+     */
+    List<CompletableFuture<ArtifactStore.Artifact>> publish(List<PageRef> formats) {
+        List<CompletableFuture<ArtifactStore.Artifact>> results = new ArrayList<>(formats.size());
+        Map<PageRef, CompletableFuture<ArtifactStore.Artifact>> started = new LinkedHashMap<>();
+        for (PageRef page : formats) {
+            CompletableFuture<ArtifactStore.Artifact> created = new CompletableFuture<>();
+            CompletableFuture<ArtifactStore.Artifact> running = inFlight.putIfAbsent(page, created);
+            if (running != null) {
+                dirty.add(page);
+                results.add(running);
+            } else {
+                started.put(page, created);
+                results.add(created);
+            }
+        }
+        if (!started.isEmpty())
+            run(started);
+        return results;
+    }
+
+    private void run(Map<PageRef, CompletableFuture<ArtifactStore.Artifact>> pages) {
+        dirty.removeAll(pages.keySet());
+        long nodeId = pages.keySet().iterator().next().getNodeId();
+        CompletableFuture<Map<PageRef, CompletableFuture<ArtifactStore.Artifact>>> rendered;
+        try {
+            rendered = CompletableFuture.supplyAsync(() -> loadPage(PAGE_BY_ID, nodeId), executor)
+                    .thenCompose(node -> render(pages.keySet(), node));
+        } catch (RejectedExecutionException ex) {
+            rendered = new CompletableFuture<>();
+            rendered.completeExceptionally(ex);
+        }
+        rendered.whenComplete((artifacts, ex) -> {
+            Map<PageRef, CompletableFuture<ArtifactStore.Artifact>> again = new LinkedHashMap<>();
+            List<PageRef> changed = new ArrayList<>();
+            for (Map.Entry<PageRef, CompletableFuture<ArtifactStore.Artifact>> page : pages.entrySet()) {
+                if (ex == null && dirty.contains(page.getKey())) {
+                    again.put(page.getKey(), page.getValue());
+                    continue;
+                }
+                inFlight.remove(page.getKey(), page.getValue());
+                if (ex != null)
+                    page.getValue().completeExceptionally(ex instanceof CompletionException ? ex.getCause() : ex);
+                else
+                    artifacts.get(page.getKey()).whenComplete((artifact, failure) -> {
+                        if (failure != null)
+                            page.getValue().completeExceptionally(failure instanceof CompletionException ? failure.getCause() : failure);
+                        else
+                            page.getValue().complete(artifact);
+                    });
+                // a change marked after the last check is rendered by a new run
+                if (dirty.remove(page.getKey()))
+                    changed.add(page.getKey());
+            }
+            if (!again.isEmpty())
+                run(again);
+            if (!changed.isEmpty())
+                publish(changed);
+        });
+    }
+
+    /**
+     * render a page which isn't published yet, concurrent requests of the same page share one render.
+     * @param format page format
+     * @param path page path
+     * @return the stored artifact or null when there's no page with the path
+     */
+    public ArtifactStore.Artifact renderOnDemand(String format, String path) throws RenderException {
+        GraphNode node = loadPage(PAGE_BY_PATH, path);
+        if (node == null)
+            return null;
+        try {
+            return publish(new PageRef(node.getRawId(), path, format)).join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RenderException)
+                throw (RenderException) ex.getCause();
+            throw new ComponentRenderException(String.format("Error while rendering page: %s", path), ex.getCause());
+        }
+    }
+
+    private GraphNode loadPage(PreparedQuery query, Object value) {
+        try {
+            return query.fetchOne(database, value).get("page");
+        } catch (NoSuchRecordException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * render the formats of a loaded page and store their artifacts once all formats are rendered, so the dependencies
+     * recorded for each format cover the nodes read by all formats.
+     * @return the artifact of each format, completed exceptionally for the formats failing to render or store
+     */
+    private CompletableFuture<Map<PageRef, CompletableFuture<ArtifactStore.Artifact>>> render(Collection<PageRef> pages, GraphNode node) {
+        Map<PageRef, CompletableFuture<ArtifactStore.Artifact>> artifacts = new HashMap<>();
+        if (node == null) {
+            // the page is deleted
+            for (PageRef page : pages) {
+                CompletableFuture<ArtifactStore.Artifact> removed = new CompletableFuture<>();
+                try {
+                    store.remove(page);
+                    dependencyResolver.rendered(page, null);
+                    removed.complete(null);
+                } catch (IOException | RuntimeException ex) {
+                    removed.completeExceptionally(ex);
+                }
+                artifacts.put(page, removed);
+            }
+            return CompletableFuture.completedFuture(artifacts);
+        }
+
+        Map<String, PageRef> formats = new LinkedHashMap<>();
+        Map<String, ByteArrayOutputStream> contents = new HashMap<>();
+        for (PageRef page : pages) {
+            formats.put(page.getFormat(), page);
+            contents.put(page.getFormat(), new ByteArrayOutputStream());
+        }
+        Map<String, CompletableFuture<Void>> rendered;
+        RenderDependencies.Recording recording = RenderDependencies.start();
+        try {
+            RenderDependencies.nodeRead(node.getRawId());
+            rendered = renderJob.submit(node, formats.keySet(), renderer::render, contents::get);
+        } finally {
+            // renders of the formats keep adding to the recording through their joined recordings
+            recording.close();
+        }
+        return CompletableFuture.allOf(rendered.values().toArray(new CompletableFuture[rendered.size()]))
+                .handle((ignored, ex) -> {
+                    LongHashSet nodes = recording.getNodes();
+                    for (Map.Entry<String, PageRef> format : formats.entrySet()) {
+                        PageRef page = format.getValue();
+                        CompletableFuture<ArtifactStore.Artifact> artifact = new CompletableFuture<>();
+                        artifacts.put(page, artifact);
+                        if (rendered.get(format.getKey()).isCompletedExceptionally()) {
+                            rendered.get(format.getKey()).whenComplete((done, failure) -> artifact.completeExceptionally(failure));
+                            continue;
+                        }
+                        try {
+                            artifact.complete(store.store(page, contents.get(format.getKey()).toByteArray()));
+                            dependencyResolver.rendered(page, nodes);
+                        } catch (IOException | RuntimeException failure) {
+                            artifact.completeExceptionally(failure);
+                        }
+                    }
+                    return artifacts;
+                });
+    }
+
+    /**
+     * @return pages rendering at the moment.
+     */
+    public Collection<PageRef> getInFlight() {
+        return new ArrayList<>(inFlight.keySet());
+    }
+}
@@ -0,0 +1,21 @@
+package media.dee.dcms.core.publish;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Pre-renders pages to static artifacts, services writing nodes notify it of their changes.
+ */
+public interface PublishService {
+
+    /**
+     * re-render the pages affected by a node change.
+     * @param nodeId id of the changed node
+     * @return completes with the number of re-rendered pages
+     */
+    CompletionStage<Integer> nodeChanged(long nodeId);
+
+    /**
+     * render a page and store its artifact.
+     */
+    CompletionStage<ArtifactStore.Artifact> publish(PageRef page);
+}
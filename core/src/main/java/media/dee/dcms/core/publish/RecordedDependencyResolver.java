@@ -0,0 +1,50 @@
+package media.dee.dcms.core.publish;
+
+import media.dee.dcms.core.cache.DependencyIndex;
+import media.dee.dcms.core.cache.LongHashSet;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Resolves the affected pages by the nodes recorded while each page rendered.<br/>
+ * the records are kept in memory and cover only the pages rendered since the start, pages published before are found
+ * by the fallback resolver, so the affected pages are the recorded pages along with the pages the fallback resolves.
+ */
+public class RecordedDependencyResolver implements DependencyResolver {
+    private final DependencyIndex<PageRef> index = new DependencyIndex<>();
+    private final DependencyResolver fallback;
+
+    /**
+     * @param fallback resolver of the pages not recorded yet, null to resolve the recorded pages only
+     */
+    public RecordedDependencyResolver(DependencyResolver fallback) {
+        this.fallback = fallback;
+    }
+
+    @Override
+    public Collection<PageRef> affectedPages(long nodeId) {
+        Collection<PageRef> recorded = index.getKeys(nodeId);
+        if (fallback == null)
+            return recorded;
+        Set<PageRef> pages = new LinkedHashSet<>(recorded);
+        pages.addAll(fallback.affectedPages(nodeId));
+        return pages;
+    }
+
+    @Override
+    public void rendered(PageRef page, LongHashSet nodeIds) {
+        if (nodeIds == null)
+            index.remove(page);
+        else
+            index.put(page, nodeIds);
+    }
+
+    /**
+     * @return number of pages with recorded dependencies.
+     */
+    public int size() {
+        return index.size();
+    }
+}
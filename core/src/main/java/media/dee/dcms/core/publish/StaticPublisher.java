@@ -0,0 +1,139 @@
+package media.dee.dcms.core.publish;
+
+import media.dee.dcms.core.db.GraphDatabaseService;
+import media.dee.dcms.core.io.BufferPool;
+import media.dee.dcms.core.layout.RenderInvalidator;
+import media.dee.dcms.core.services.RenderService;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.http.HttpService;
+import org.osgi.service.log.LogService;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+
+/**
+ * Publish service over the bundle data folder, serving each format's pages at {publish.alias}/{format}.<br/>
+ * configuration: <code>publish.alias</code> (default /site), <code>publish.formats</code> comma separated formats
+ * (default html, formats the page renderer doesn't produce are skipped), <code>publish.directory</code> store folder (default the bundle data folder),
+ * <code>publish.threads</code> number of pages rendered at once (default the number of processors).<br/>
+ * node changes notified to the {@link RenderInvalidator}, by this node or by the cluster, re-render the affected pages.
+ */
+@Component(immediate = true, service = PublishService.class)
+public class StaticPublisher implements PublishService {
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    private GraphDatabaseService<?> database;
+    private RenderService renderService;
+    private HttpService httpService;
+    private LogService log;
+    private RenderInvalidator invalidator;
+    private LongConsumer invalidationListener;
+    private ExecutorService executor;
+    private PublishPipeline pipeline;
+    private final List<String> aliases = new ArrayList<>();
+
+    @Reference
+    void setGraphDatabaseService(GraphDatabaseService<?> database) {
+        this.database = database;
+    }
+
+    @Reference
+    void setRenderService(RenderService renderService) {
+        this.renderService = renderService;
+    }
+
+    @Reference
+    void setHttpService(HttpService httpService) {
+        this.httpService = httpService;
+    }
+
+    @Reference
+    void setLogService(LogService log) {
+        this.log = log;
+    }
+
+    @Reference
+    void setRenderInvalidator(RenderInvalidator invalidator) {
+        this.invalidator = invalidator;
+    }
+
+    private static String getString(Map<String, Object> properties, String key, String defaultValue) {
+        Object value = properties.get(key);
+        return value == null ? defaultValue : value.toString();
+    }
+
+    @Activate
+    void activate(BundleContext context, Map<String, Object> properties) {
+        String alias = getString(properties, "publish.alias", "/site");
+        PageRenderer renderer = PageRenderer.of(renderService);
+        List<String> formats = new ArrayList<>();
+        for (String format : getString(properties, "publish.formats", PageRenderer.DEFAULT_FORMAT).split("\\s*,\\s*")) {
+            if (renderer.supports(format))
+                formats.add(format);
+            else
+                log.log(LogService.LOG_WARNING, String.format("Publishing format isn't supported by the page renderer: %s", format));
+        }
+        String directory = getString(properties, "publish.directory", null);
+        int threads = Integer.parseInt(getString(properties, "publish.threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, String.format("dcms-publish-%d", threadCount.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        });
+        ArtifactStore store = new ArtifactStore(directory == null ? context.getDataFile("published") : new File(directory));
+        pipeline = new PublishPipeline(database, renderer, new RecordedDependencyResolver(new GraphDependencyResolver(database, formats)), store, executor);
+        invalidationListener = nodeId -> pipeline.nodeChanged(nodeId).whenComplete((count, ex) -> {
+            if (ex != null)
+                log.log(LogService.LOG_ERROR, String.format("Error while re-publishing the pages of node: %d", nodeId), ex);
+        });
+        invalidator.addListener(invalidationListener);
+
+        for (String format : formats) {
+            String formatAlias = String.format("%s/%s", alias, format);
+            try {
+                httpService.registerServlet(formatAlias, new ArtifactServlet(pipeline, format), null, null);
+                aliases.add(formatAlias);
+            } catch (Exception ex) {
+                log.log(LogService.LOG_ERROR, String.format("Error while registering published pages: %s", formatAlias), ex);
+            }
+        }
+        log.log(LogService.LOG_INFO, String.format("Static publisher activated at %s, formats: %s", alias, formats));
+    }
+
+    @Deactivate
+    void deactivate() {
+        invalidator.removeListener(invalidationListener);
+        for (String alias : aliases) {
+            try {
+                httpService.unregister(alias);
+            } catch (Exception ex) {
+                log.log(LogService.LOG_ERROR, String.format("Error while un-registering published pages: %s", alias), ex);
+            }
+        }
+        aliases.clear();
+        executor.shutdown();
+        log.log(LogService.LOG_INFO, String.format("Static publisher deactivated [%s; %s]", BufferPool.heap().getStats(), BufferPool.direct().getStats()));
+    }
+
+    @Override
+    public CompletionStage<Integer> nodeChanged(long nodeId) {
+        return pipeline.nodeChanged(nodeId);
+    }
+
+    @Override
+    public CompletionStage<ArtifactStore.Artifact> publish(PageRef page) {
+        return pipeline.publish(page);
+    }
+}
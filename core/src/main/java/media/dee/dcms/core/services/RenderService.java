@@ -17,7 +17,10 @@
 package media.dee.dcms.core.services;
 
 import media.dee.dcms.core.db.GraphDatabaseService;
+import media.dee.dcms.core.layout.RenderDependencies;
 import media.dee.dcms.core.layout.RenderException;
+import media.dee.dcms.core.layout.RenderMode;
+import media.dee.dcms.core.layout.SourceTemplate;
 import media.dee.dcms.core.layout.Template;
 
 import java.io.OutputStream;
@@ -25,4 +28,29 @@ import java.io.OutputStream;
 public interface RenderService {
     void render(OutputStream outputStream, GraphDatabaseService.GraphNode model) throws RenderException;
     void render(OutputStream outputStream, Template template, GraphDatabaseService.GraphNode model) throws RenderException;
+
+    /**
+     * render a page in the given mode.<br/>
+     * the default implementation renders sequentially, services supporting progressive pages should override it
+     * and render the layout parts with {@link media.dee.dcms.core.layout.ProgressiveRenderer}.
+     */
+    default void render(OutputStream outputStream, Template template, GraphDatabaseService.GraphNode model, RenderMode mode) throws RenderException {
+        render(outputStream, template, model);
+    }
+
+    /**
+     * render a page recording the nodes and templates it reads.<br/>
+     * the model and the template are always recorded, the nodes loaded while rendering are recorded when the
+     * implementation reports them through {@link RenderDependencies}.
+     * @return the closed recording of the render
+     */
+    default RenderDependencies.Recording renderRecorded(OutputStream outputStream, Template template, GraphDatabaseService.GraphNode model) throws RenderException {
+        try (RenderDependencies.Recording recording = RenderDependencies.start()) {
+            RenderDependencies.nodeRead(model.getRawId());
+            if (template != null)
+                RenderDependencies.templateUsed(SourceTemplate.hash(template.getTemplate()));
+            render(outputStream, template, model);
+            return recording;
+        }
+    }
 }
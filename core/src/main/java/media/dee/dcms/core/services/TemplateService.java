@@ -17,9 +17,76 @@
 package media.dee.dcms.core.services;
 
 import media.dee.dcms.core.db.GraphDatabaseService;
+import media.dee.dcms.core.layout.ChunkedUtf8Writer;
+import media.dee.dcms.core.layout.CompiledTemplate;
 import media.dee.dcms.core.layout.RenderException;
+import media.dee.dcms.core.layout.RenderOutputException;
+import media.dee.dcms.core.layout.SourceTemplate;
+import media.dee.dcms.core.layout.TemplateCompileException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
 
 public interface TemplateService {
 
+    /**
+     * render a template into memory, kept for compatibility, prefer the streaming
+     * {@link #render(Writer, String, GraphDatabaseService.GraphNode)}.
+     */
     StringBuffer render(String html, GraphDatabaseService.GraphNode model) throws RenderException;
+
+    /**
+     * render a template to a writer as it's processed.<br/>
+     * the default implementation writes the result of {@link #render(String, GraphDatabaseService.GraphNode)},
+     * services able to stream should override the writer methods.
+     */
+    default void render(Writer writer, String html, GraphDatabaseService.GraphNode model) throws RenderException {
+        try {
+            writer.append(render(html, model));
+        } catch (IOException ex) {
+            throw new RenderOutputException(ex);
+        }
+    }
+
+    default void render(Writer writer, CompiledTemplate template, GraphDatabaseService.GraphNode model) throws RenderException {
+        try {
+            writer.append(render(template, model));
+        } catch (IOException ex) {
+            throw new RenderOutputException(ex);
+        }
+    }
+
+    /**
+     * render a compiled template to an output stream as UTF-8, flushed in chunks of {@link ChunkedUtf8Writer#CHUNK_SIZE}.
+     * the output stream is left open.
+     */
+    default void render(OutputStream outputStream, CompiledTemplate template, GraphDatabaseService.GraphNode model) throws RenderException {
+        try (Writer writer = new ChunkedUtf8Writer(outputStream)) {
+            render(writer, template, model);
+        } catch (IOException ex) {
+            throw new RenderOutputException(ex);
+        }
+    }
+
+    /**
+     * parse a template once to render it many times, see {@link media.dee.dcms.core.layout.TemplateCache}.<br/>
+     * the default implementation keeps the source as is, services with a compiled form should override it
+     * along with {@link #render(CompiledTemplate, GraphDatabaseService.GraphNode)}.
+     * @param html the template source
+     * @return handle of the compiled template
+     * @throws RenderException when the template source is invalid
+     */
+    default CompiledTemplate compile(String html) throws RenderException {
+        return CompiledTemplate.ofSource(html);
+    }
+
+    /**
+     * render a template compiled by this service.
+     */
+    default StringBuffer render(CompiledTemplate template, GraphDatabaseService.GraphNode model) throws RenderException {
+        if (template instanceof SourceTemplate)
+            return render(((SourceTemplate) template).getSource(), model);
+        throw new TemplateCompileException(String.format("Template is not compiled by %s", getClass().getName()));
+    }
 }
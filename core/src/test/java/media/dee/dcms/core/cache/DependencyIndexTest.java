@@ -0,0 +1,100 @@
+package media.dee.dcms.core.cache;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static media.dee.dcms.core.cache.LongHashSetTest.keysAt;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DependencyIndexTest {
+
+    private static LongHashSet nodes(long... nodeIds) {
+        LongHashSet set = new LongHashSet();
+        for (long nodeId : nodeIds)
+            set.add(nodeId);
+        return set;
+    }
+
+    @Test
+    public void removeNodeFromCollisionChain() {
+        // the index starts with 16 slots, like the sets of LongHashSetTest
+        long[] chain = keysAt(5, 4);
+        DependencyIndex<String> index = new DependencyIndex<>();
+        for (int i = 0; i < chain.length; ++i)
+            index.put("key" + i, nodes(chain[i]));
+
+        index.remove("key1");
+        assertEquals(3, index.nodeCount());
+        assertEquals(Collections.emptyList(), index.getKeys(chain[1]));
+        assertEquals(Collections.singletonList("key0"), index.getKeys(chain[0]));
+        assertEquals(Collections.singletonList("key2"), index.getKeys(chain[2]));
+        assertEquals(Collections.singletonList("key3"), index.getKeys(chain[3]));
+    }
+
+    @Test
+    public void removeNodesWrappingAroundTheTable() {
+        long[] wrapped = keysAt(15, 3);
+        long[] first = keysAt(0, 2);
+        DependencyIndex<String> index = new DependencyIndex<>();
+        index.put("wrapped", nodes(wrapped));
+        index.put("first", nodes(first));
+        assertEquals(5, index.nodeCount());
+
+        assertEquals(Collections.singletonList("wrapped"), index.invalidate(wrapped[1]));
+        assertEquals(2, index.nodeCount());
+        assertNull(index.getDependencies("wrapped"));
+        for (long node : wrapped)
+            assertEquals(Collections.emptyList(), index.getKeys(node));
+        for (long node : first)
+            assertEquals(Collections.singletonList("first"), index.getKeys(node));
+    }
+
+    @Test
+    public void zeroNode() {
+        DependencyIndex<String> index = new DependencyIndex<>();
+        index.put("a", nodes(0, 3));
+        index.put("b", nodes(0));
+        assertEquals(2, index.nodeCount());
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")), new HashSet<>(index.getKeys(0)));
+
+        index.remove("b");
+        assertEquals(Collections.singletonList("a"), index.getKeys(0));
+        assertEquals(Collections.singletonList("a"), index.invalidate(0));
+        assertEquals(0, index.nodeCount());
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void putReplacesDependencies() {
+        DependencyIndex<String> index = new DependencyIndex<>();
+        index.put("a", nodes(1, 2));
+        index.put("a", nodes(2, 3));
+        assertEquals(Collections.emptyList(), index.getKeys(1));
+        assertEquals(Collections.singletonList("a"), index.getKeys(3));
+        assertEquals(2, index.nodeCount());
+    }
+
+    @Test
+    public void invalidateAfterRehash() {
+        DependencyIndex<Long> index = new DependencyIndex<>();
+        for (long node = 1; node <= 1000; ++node)
+            index.put(node, nodes(node, node + 1000));
+        assertEquals(2000, index.nodeCount());
+
+        for (long node = 1; node <= 1000; node += 2)
+            assertEquals(Collections.singletonList(node), index.invalidate(node + 1000));
+        for (long node = 1; node <= 1000; ++node) {
+            boolean kept = (node & 1) == 0;
+            assertEquals(kept ? Collections.singletonList(node) : Collections.emptyList(), index.getKeys(node));
+            assertEquals(kept ? Collections.singletonList(node) : Collections.emptyList(), index.getKeys(node + 1000));
+        }
+        assertEquals(1000, index.nodeCount());
+        assertEquals(500, index.size());
+        assertTrue(index.getDependencies(2L).contains(1002));
+    }
+}
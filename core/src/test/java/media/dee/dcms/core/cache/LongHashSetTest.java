@@ -0,0 +1,127 @@
+package media.dee.dcms.core.cache;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LongHashSetTest {
+    /**
+     * table of a set expecting 8 keys, it holds 12 keys before growing.
+     */
+    private static final int MASK = 15;
+
+    /**
+     * @return positive keys whose probe sequences start at a slot of a 16 slots table.
+     */
+    static long[] keysAt(int slot, int count) {
+        long[] keys = new long[count];
+        int found = 0;
+        for (long key = 1; found < count; ++key)
+            if ((LongHashSet.hash(key) & MASK) == slot)
+                keys[found++] = key;
+        return keys;
+    }
+
+    @Test
+    public void removeFromCollisionChain() {
+        long[] chain = keysAt(3, 4);
+        for (int removed = 0; removed < chain.length; ++removed) {
+            LongHashSet set = new LongHashSet(8);
+            for (long key : chain)
+                set.add(key);
+
+            assertTrue(set.remove(chain[removed]));
+            assertFalse(set.remove(chain[removed]));
+            assertEquals(chain.length - 1, set.size());
+            for (int i = 0; i < chain.length; ++i)
+                assertEquals(i != removed, set.contains(chain[i]));
+        }
+    }
+
+    @Test
+    public void removeWrappingAroundTheTable() {
+        long[] wrapped = keysAt(MASK, 3);
+        long[] first = keysAt(0, 2);
+        LongHashSet set = new LongHashSet(8);
+        for (long key : wrapped)
+            set.add(key);
+        // slots 0 and 1 are taken by the wrapped keys, the keys of slot 0 follow them
+        for (long key : first)
+            set.add(key);
+
+        assertTrue(set.remove(wrapped[0]));
+        assertTrue(set.contains(wrapped[1]));
+        assertTrue(set.contains(wrapped[2]));
+        assertTrue(set.contains(first[0]));
+        assertTrue(set.contains(first[1]));
+
+        assertTrue(set.remove(first[0]));
+        assertTrue(set.contains(wrapped[1]));
+        assertTrue(set.contains(wrapped[2]));
+        assertTrue(set.contains(first[1]));
+
+        assertTrue(set.remove(wrapped[2]));
+        assertTrue(set.remove(wrapped[1]));
+        assertTrue(set.contains(first[1]));
+        assertEquals(1, set.size());
+    }
+
+    @Test
+    public void zeroKey() {
+        LongHashSet set = new LongHashSet();
+        assertFalse(set.contains(0));
+        assertFalse(set.remove(0));
+
+        assertTrue(set.add(0));
+        assertFalse(set.add(0));
+        set.add(7);
+        assertTrue(set.contains(0));
+        assertEquals(2, set.size());
+        assertArrayEquals(new long[]{0, 7}, set.toArray());
+
+        assertTrue(set.remove(0));
+        assertFalse(set.contains(0));
+        assertTrue(set.contains(7));
+        assertEquals(1, set.size());
+    }
+
+    @Test
+    public void removeAfterRehash() {
+        LongHashSet set = new LongHashSet(4);
+        for (long key = -500; key <= 500; ++key)
+            set.add(key);
+        assertEquals(1001, set.size());
+
+        for (long key = -500; key <= 500; key += 2)
+            assertTrue(set.remove(key));
+        for (long key = -500; key <= 500; ++key)
+            assertEquals((key & 1) != 0, set.contains(key));
+        assertEquals(500, set.size());
+    }
+
+    @Test
+    public void matchesHashSet() {
+        Random random = new Random(42);
+        LongHashSet set = new LongHashSet();
+        Set<Long> expected = new HashSet<>();
+        long[] colliding = keysAt(MASK, 8);
+        for (int i = 0; i < 100000; ++i) {
+            long key = random.nextBoolean() ? colliding[random.nextInt(colliding.length)] : random.nextInt(64) - 8;
+            if (random.nextInt(3) == 0)
+                assertEquals(expected.remove(key), set.remove(key));
+            else
+                assertEquals(expected.add(key), set.add(key));
+            assertEquals(expected.size(), set.size());
+        }
+        for (Long key : expected)
+            assertTrue(set.contains(key));
+        assertEquals(expected.size(), set.toArray().length);
+    }
+}
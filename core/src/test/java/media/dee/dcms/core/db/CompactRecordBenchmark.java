@@ -0,0 +1,104 @@
+package media.dee.dcms.core.db;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compares the memory per node and the field access time of {@link CompactRecord} with HashMap records.<br/>
+ * run with a fixed heap for stable numbers:
+ * <code>java -Xms2g -Xmx2g -cp target/classes:target/test-classes media.dee.dcms.core.db.CompactRecordBenchmark [nodes]</code>
+ */
+public class CompactRecordBenchmark {
+    private static final String[] KEYS = {"id", "title", "type", "order", "weight", "visible", "created", "views"};
+    private static final String[] TYPES = {"Page", "Article", "Widget"};
+    private static final int ACCESS_ROUNDS = 20;
+
+    private static volatile Object sink;
+
+    private static Map<String, Object> hashMapNode(int i) {
+        Map<String, Object> node = new HashMap<>();
+        node.put("id", (long) i);
+        node.put("title", TYPES[i % TYPES.length] + " title");
+        node.put("type", TYPES[i % TYPES.length]);
+        node.put("order", (long) (i % 100));
+        node.put("weight", i * 0.5);
+        node.put("visible", i % 2 == 0);
+        node.put("created", 1500000000000L + i);
+        node.put("views", (long) i * 3);
+        return node;
+    }
+
+    private static CompactRecord compactNode(RecordSchema schema, int i) {
+        return schema.record()
+                .set(0, (long) i)
+                .set(1, TYPES[i % TYPES.length] + " title")
+                .set(2, TYPES[i % TYPES.length])
+                .set(3, (long) (i % 100))
+                .set(4, i * 0.5)
+                .set(5, i % 2 == 0)
+                .set(6, 1500000000000L + i)
+                .set(7, (long) i * 3)
+                .build();
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; ++i) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long accessNanos(Object[] nodes, boolean primitive) {
+        long sum = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < ACCESS_ROUNDS; ++round) {
+            for (Object node : nodes) {
+                if (primitive)
+                    sum += ((CompactRecord) node).getLong("views");
+                else
+                    sum += (Long) ((Map<?, ?>) node).get("views");
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        sink = sum;
+        return elapsed / ((long) nodes.length * ACCESS_ROUNDS);
+    }
+
+    private static void measure(String name, Object[] nodes, boolean primitive) {
+        // warm up the access path before measuring it
+        for (int i = 0; i < 5; ++i)
+            accessNanos(nodes, primitive);
+        System.out.printf("%-22s access: %d ns%n", name, accessNanos(nodes, primitive));
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        RecordSchema schema = RecordSchema.of(KEYS);
+
+        long before = usedMemory();
+        Object[] maps = new Object[count];
+        for (int i = 0; i < count; ++i)
+            maps[i] = hashMapNode(i);
+        long mapBytes = usedMemory() - before;
+
+        before = usedMemory();
+        Object[] records = new Object[count];
+        for (int i = 0; i < count; ++i)
+            records[i] = compactNode(schema, i);
+        long recordBytes = usedMemory() - before;
+
+        System.out.printf("%d nodes, %d properties%n", count, KEYS.length);
+        System.out.printf("HashMap                memory: %d B/node%n", mapBytes / count);
+        System.out.printf("CompactRecord          memory: %d B/node%n", recordBytes / count);
+        measure("HashMap get", maps, false);
+        measure("CompactRecord get", records, false);
+        measure("CompactRecord getLong", records, true);
+        sink = maps.length + records.length;
+    }
+}
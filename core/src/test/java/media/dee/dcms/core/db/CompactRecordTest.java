@@ -0,0 +1,72 @@
+package media.dee.dcms.core.db;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CompactRecordTest {
+
+    private static Object roundTrip(Object value) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return in.readObject();
+        }
+    }
+
+    @Test
+    public void copiesAreImmutable() {
+        List<Object> parts = new ArrayList<>(Arrays.asList(1L, 2L));
+        Map<String, Object> values = new HashMap<>();
+        values.put("name", "header");
+        values.put("parts", parts);
+        CompactRecord record = CompactRecord.copyOf(values);
+
+        values.put("name", "footer");
+        parts.add(3L);
+        assertEquals("header", record.get("name"));
+        assertEquals(Arrays.asList(1L, 2L), record.get("parts"));
+        try {
+            record.put("name", "footer");
+            fail();
+        } catch (UnsupportedOperationException expected) {
+        }
+        try {
+            record.<List<Object>>get("parts").add(3L);
+            fail();
+        } catch (UnsupportedOperationException expected) {
+        }
+    }
+
+    @Test
+    public void serializesValuesAndNodes() throws Exception {
+        Map<String, Object> nested = new HashMap<>();
+        nested.put("size", 2.5);
+        CompactRecord record = RecordSchema.of("id", "visible", "nested").record()
+                .set(0, 7L).set(1, true).set(2, CompactRecord.copyOf(nested)).build();
+        CompactRecord copy = (CompactRecord) roundTrip(record);
+        assertEquals(record, copy);
+        assertEquals(7L, copy.getLong("id"));
+        assertTrue(copy.getBoolean("visible"));
+
+        CompactGraphNode node = RecordSchema.of("name").record().set(0, "header").buildNode(new String[]{"Component"}, 42);
+        CompactGraphNode nodeCopy = (CompactGraphNode) roundTrip(node);
+        assertEquals(node, nodeCopy);
+        assertEquals(Arrays.asList("Component"), nodeCopy.getLabels());
+        assertEquals(42, nodeCopy.getRawId());
+    }
+}
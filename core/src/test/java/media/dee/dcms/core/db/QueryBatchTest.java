@@ -0,0 +1,36 @@
+package media.dee.dcms.core.db;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class QueryBatchTest {
+
+    @Test
+    public void mergesParametersIntoTheBatchRow() {
+        assertEquals("UNWIND $__batch AS __row MATCH (c:Component) WHERE id(c) = __row.id RETURN __row.__idx AS __idx, c",
+                QueryBatch.merge("MATCH (c:Component) WHERE id(c) = $id RETURN c"));
+        assertEquals("UNWIND $__batch AS __row MATCH (c:Component) WHERE c.type = __row.type RETURN __row.__idx AS __idx, c.name AS name, __row.type AS type",
+                QueryBatch.merge("MATCH (c:Component) WHERE c.type = {type} RETURN c.name AS name, $type AS type"));
+    }
+
+    @Test
+    public void keepsAggregatesUnmerged() {
+        // merged, a statement matching nothing would get no record instead of a count of 0
+        assertNull(QueryBatch.merge("MATCH (c:Component) WHERE c.type = $type RETURN count(c) AS total"));
+        assertNull(QueryBatch.merge("MATCH (c:Component) WHERE c.type = $type RETURN COUNT (*) AS total"));
+        assertNull(QueryBatch.merge("MATCH (c:Component)-[:CHILD]->(p) WHERE id(c) = $id RETURN c, collect(p) AS parts"));
+        assertNull(QueryBatch.merge("MATCH (c:Component) WHERE c.type = $type RETURN sum(c.size), avg(c.size), min(c.size), max(c.size)"));
+        assertNull(QueryBatch.merge("MATCH (c:Component) WHERE c.type = $type RETURN stDev(c.size), percentileCont(c.size, 0.5)"));
+        assertNull(QueryBatch.merge("MATCH (c:Component) WHERE c.type = $type RETURN DISTINCT c.name"));
+    }
+
+    @Test
+    public void keepsUnsafeClausesUnmerged() {
+        assertNull(QueryBatch.merge("MATCH (c:Component) WHERE id(c) = $id RETURN c ORDER BY c.name"));
+        assertNull(QueryBatch.merge("MATCH (c:Component) WHERE id(c) = $id RETURN c LIMIT 1"));
+        assertNull(QueryBatch.merge("MATCH (c:Component) WHERE id(c) = $id RETURN *"));
+        assertNull(QueryBatch.merge("MATCH (c:Component {name: 'x'}) WHERE id(c) = $id RETURN c"));
+    }
+}
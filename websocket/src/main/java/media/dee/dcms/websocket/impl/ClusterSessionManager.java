@@ -135,15 +135,31 @@ public class ClusterSessionManager implements SessionManager {
             session.send(message);
             return true;
         } catch (IOException e) {
-            Session clusterSession = get(session.getId());
-            if( clusterSession instanceof LocalSession){
-                LocalSession localSession = (LocalSession) clusterSession;
-                sessionClosed(localSession.getSession());
-            }
+            sendFailed(session);
             return false;
         }
     }
 
+    private boolean send(Session session, JsonNode message, String encoded){
+        if( !(session instanceof LocalSession) )
+            return send(session, message);
+        try {
+            ((LocalSession) session).send(encoded);
+            return true;
+        } catch (IOException e) {
+            sendFailed(session);
+            return false;
+        }
+    }
+
+    private void sendFailed(Session session){
+        Session clusterSession = get(session.getId());
+        if( clusterSession instanceof LocalSession){
+            LocalSession localSession = (LocalSession) clusterSession;
+            sessionClosed(localSession.getSession());
+        }
+    }
+
     @Override
     public Future<Void> send(String sessionID, JsonNode message) {
         /* dispachter of SendMessage, so only local session should be served, remote message is passed without errors. */
@@ -193,10 +209,12 @@ public class ClusterSessionManager implements SessionManager {
 
     @Override
     public long send(JsonNode message) {
+        /* encode once for all sessions */
+        String encoded = JsonCodec.encode(message);
         return localSessions
                 .values()
                 .parallelStream()
-                .map( s -> this.send( s, message) )
+                .map( s -> this.send( s, message, encoded) )
                 .filter( b -> b )
                 .count();
     }
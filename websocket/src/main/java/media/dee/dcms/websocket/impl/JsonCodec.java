@@ -0,0 +1,35 @@
+package media.dee.dcms.websocket.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+
+/**
+ * Shared Json reader and writer of websocket messages.<br/>
+ * the mapper is created once and Jackson recycles its per-thread encoding buffers, so encoding a message allocates
+ * the resulting string only instead of the buffers of a new mapper or the builders of JsonNode.toString().
+ */
+public final class JsonCodec {
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final ObjectWriter writer = mapper.writer();
+    private static final ObjectReader reader = mapper.readerFor(JsonNode.class);
+
+    private JsonCodec() {
+    }
+
+    public static String encode(JsonNode json) {
+        try {
+            return writer.writeValueAsString(json);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalArgumentException(ex);
+        }
+    }
+
+    public static JsonNode decode(String text) throws IOException {
+        return reader.readValue(text);
+    }
+}
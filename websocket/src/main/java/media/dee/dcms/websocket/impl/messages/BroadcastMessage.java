@@ -1,8 +1,8 @@
 package media.dee.dcms.websocket.impl.messages;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import media.dee.dcms.websocket.SessionManager;
+import media.dee.dcms.websocket.impl.JsonCodec;
 
 import java.io.IOException;
 
@@ -11,14 +11,13 @@ public class BroadcastMessage implements Message {
 
 
     public BroadcastMessage(JsonNode message) {
-        this.message = message.toString();
+        this.message = JsonCodec.encode(message);
     }
 
     @Override
     public void dispatch(SessionManager sessionManager) {
-        ObjectMapper mapper = new ObjectMapper();
         try {
-            sessionManager.send(mapper.readValue(message, JsonNode.class));
+            sessionManager.send(JsonCodec.decode(message));
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
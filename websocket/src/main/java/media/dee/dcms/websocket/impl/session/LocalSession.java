@@ -1,6 +1,7 @@
 package media.dee.dcms.websocket.impl.session;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import media.dee.dcms.websocket.impl.JsonCodec;
 import org.eclipse.jetty.websocket.api.Session;
 
 import java.io.IOException;
@@ -29,12 +30,19 @@ public class LocalSession implements media.dee.dcms.websocket.Session {
 
     @Override
     public void send(JsonNode json) throws IOException {
-        this.session.getRemote().sendString(json.toString());
+        send(JsonCodec.encode(json));
+    }
+
+    /**
+     * send an encoded Json message, so a message sent to many sessions is encoded once.
+     */
+    public void send(String text) throws IOException {
+        this.session.getRemote().sendString(text);
     }
 
     @Override
     public Future<Void> sendByFuture(JsonNode json) {
-        return this.session.getRemote().sendStringByFuture(json.toString());
+        return this.session.getRemote().sendStringByFuture(JsonCodec.encode(json));
     }
 
     @Override